@@ -0,0 +1,158 @@
+package nd.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton for set of literals.
+ * Finds occurrences of all literals in one pass over input, whatever number of literals is.
+ * Trie is stored in flat arrays: children of node n are labels[first[n] .. first[n + 1]) sorted by label
+ * with target nodes in targets, so memory is linear in total length of literals.
+ * <p>
+ * Automaton is immutable and can be shared between threads.
+ */
+final class AhoCorasick {
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    /** The only literal if there is one literal, it is searched with {@link String#indexOf(String, int)} */
+    private final String single;
+    private final int[] first;
+    private final char[] labels;
+    private final int[] targets;
+    /** Node to continue from when node has no child for character */
+    private final int[] fail;
+    /** Length of the longest literal which is suffix of string of node or 0 */
+    private final int[] longest;
+    private final int maxLength;
+
+    /**
+     * Build automaton
+     * @param literals non-empty literals
+     */
+    AhoCorasick(String... literals) {
+        if (literals.length == 0) throw new IllegalArgumentException("No literals");
+        int max = 0;
+        for (String literal : literals) {
+            if (literal.isEmpty()) throw new IllegalArgumentException("Empty literal");
+            max = Math.max(max, literal.length());
+        }
+        this.maxLength = max;
+        this.single = literals.length == 1 ? literals[0] : null;
+
+        //trie with nodes numbered in order of creation
+        List<TreeMap<Character, Integer>> children = new ArrayList<TreeMap<Character, Integer>>();
+        List<Integer> depth = new ArrayList<Integer>();
+        children.add(new TreeMap<Character, Integer>());
+        depth.add(0);
+        List<Integer> terminal = new ArrayList<Integer>();
+        for (String literal : literals) {
+            int node = ROOT;
+            for (int i = 0; i < literal.length(); i++) {
+                Integer child = children.get(node).get(literal.charAt(i));
+                if (child == null) {
+                    child = children.size();
+                    children.add(new TreeMap<Character, Integer>());
+                    depth.add(i + 1);
+                    children.get(node).put(literal.charAt(i), child);
+                }
+                node = child;
+            }
+            terminal.add(node);
+        }
+
+        //renumber nodes in breadth-first order, so failure links always point to already processed nodes
+        int n = children.size();
+        int[] order = new int[n];
+        int[] number = new int[n];
+        int size = 1;
+        for (int i = 0; i < size; i++) {
+            for (int child : children.get(order[i]).values()) {
+                number[child] = size;
+                order[size++] = child;
+            }
+        }
+        first = new int[n + 1];
+        labels = new char[n - 1];
+        targets = new int[n - 1];
+        int edges = 0;
+        for (int i = 0; i < n; i++) {
+            first[i] = edges;
+            for (Map.Entry<Character, Integer> edge : children.get(order[i]).entrySet()) {
+                labels[edges] = edge.getKey();
+                targets[edges++] = number[edge.getValue()];
+            }
+        }
+        first[n] = edges;
+
+        longest = new int[n];
+        for (int node : terminal) {
+            longest[number[node]] = depth.get(node);
+        }
+        fail = new int[n];
+        for (int node = 0; node < n; node++) {
+            for (int e = first[node]; e < first[node + 1]; e++) {
+                int child = targets[e];
+                fail[child] = node == ROOT ? ROOT : step(fail[node], labels[e]);
+                if (longest[child] == 0) longest[child] = longest[fail[child]];
+            }
+        }
+    }
+
+    /**
+     * Find the first position where some literal occurs
+     * @param str string to search in
+     * @param from position to search from
+     * @return the smallest start of occurrence of any literal at from or later, -1 if there is no occurrence
+     */
+    int indexIn(String str, int from) {
+        if (single != null) return str.indexOf(single, from);
+        int node = ROOT;
+        int best = NONE;
+        for (int i = from; i < str.length(); i++) {
+            node = step(node, str.charAt(i));
+            if (longest[node] > 0) {
+                int start = i + 1 - longest[node];
+                if (best == NONE || start < best) best = start;
+            }
+            //literal which ends later and starts before best would be longer than any literal
+            if (best != NONE && i + 1 - best >= maxLength) break;
+        }
+        return best;
+    }
+
+    /**
+     * @return number of trie nodes
+     */
+    int size() {
+        return longest.length;
+    }
+
+    private int step(int node, char c) {
+        while (true) {
+            int child = child(node, c);
+            if (child != NONE) return child;
+            if (node == ROOT) return ROOT;
+            node = fail[node];
+        }
+    }
+
+    private int child(int node, char c) {
+        int low = first[node];
+        int high = first[node + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (labels[middle] < c) {
+                low = middle + 1;
+            } else if (labels[middle] > c) {
+                high = middle - 1;
+            } else {
+                return targets[middle];
+            }
+        }
+        return NONE;
+    }
+}
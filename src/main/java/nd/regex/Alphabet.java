@@ -0,0 +1,251 @@
+package nd.regex;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static nd.regex.Program.*;
+
+/**
+ * Partition of characters to equivalence classes.
+ * Two characters are in the same class if every instruction of program either accepts both or none of them,
+ * so table-driven engines can index transitions by class instead of character.
+ * Classes are numbered from 0 to {@link #size()} - 1.
+ * <p>
+ * Character to class mapping is two-level table: high byte of character selects block of 256 classes
+ * for its low byte. Equal blocks are shared, so the table is small for any pattern.
+ */
+final class Alphabet {
+
+    private static final int BLOCK = 256;
+
+    /** Offset of block in {@link #classes} for every high byte */
+    private final int[] blocks;
+    private final char[] classes;
+    /** Some character of every class */
+    private final char[] representatives;
+
+    private Alphabet(int[] blocks, char[] classes, char[] representatives) {
+        this.blocks = blocks;
+        this.classes = classes;
+        this.representatives = representatives;
+    }
+
+    /**
+     * Compute minimal set of classes for instructions of program
+     * @param op operations
+     * @param arg operands
+     * @param charClasses character classes
+     * @return alphabet
+     */
+    static Alphabet of(int[] op, int[] arg, CharClass[] charClasses) {
+        //every character or class used by program is predicate, intervals between points where
+        //some predicate changes its value have the same value of every predicate
+        int predicates = 0;
+        int[][] predicateRanges = new int[op.length + 1][];
+        Set<Integer> chars = new HashSet<Integer>();
+        Set<Integer> usedClasses = new HashSet<Integer>();
+        for (int pc = 0; pc < op.length; pc++) {
+            switch (op[pc]) {
+                case CHAR:
+                    if (chars.add(arg[pc])) {
+                        predicateRanges[predicates++] = new int[] {arg[pc], arg[pc]};
+                    }
+                    break;
+                case CLASS:
+                    if (usedClasses.add(arg[pc])) {
+                        predicateRanges[predicates++] = charClasses[arg[pc]].ranges();
+                    }
+                    break;
+            }
+        }
+
+        int[] points = new int[2];
+        int n = 0;
+        for (int p = 0; p < predicates; p++) {
+            int[] ranges = predicateRanges[p];
+            if (n + ranges.length > points.length) points = Arrays.copyOf(points, 2 * (n + ranges.length));
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] > Character.MIN_VALUE) points[n++] = ranges[i];
+                if (ranges[i + 1] < Character.MAX_VALUE) points[n++] = ranges[i + 1] + 1;
+            }
+        }
+        Arrays.sort(points, 0, n);
+        //intervals between points, the last start is the end of all characters
+        int[] starts = new int[n + 2];
+        int intervals = 1;
+        for (int i = 0; i < n; i++) {
+            if (points[i] != starts[intervals - 1]) starts[intervals++] = points[i];
+        }
+        starts[intervals] = Character.MAX_VALUE + 1;
+
+        //all intervals start in one class, every predicate splits classes which it contains partially;
+        //it is the same to split by predicate or by its complement, so the smaller of them is walked
+        Partition partition = new Partition(intervals);
+        for (int p = 0; p < predicates; p++) {
+            int[] ranges = predicateRanges[p];
+            int inside = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                inside += index(starts, intervals, ranges[i + 1] + 1) - index(starts, intervals, ranges[i]);
+            }
+            boolean small = 2 * inside <= intervals;
+            partition.next();
+            int outside = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                int from = index(starts, intervals, ranges[i]);
+                int to = index(starts, intervals, ranges[i + 1] + 1);
+                if (small) {
+                    partition.split(from, to);
+                } else {
+                    partition.split(outside, from);
+                    outside = to;
+                }
+            }
+            if (!small) partition.split(outside, intervals);
+        }
+
+        //classes are numbered in order of their first characters
+        int[] numbers = new int[partition.size];
+        Arrays.fill(numbers, -1);
+        char[] representatives = new char[intervals];
+        int size = 0;
+        for (int i = 0; i < intervals; i++) {
+            int cls = partition.classes[i];
+            if (numbers[cls] < 0) {
+                numbers[cls] = size;
+                representatives[size++] = (char) starts[i];
+            }
+            partition.classes[i] = numbers[cls];
+        }
+
+        //blocks inside one interval are shared per class, others are shared if they are equal
+        int[] blocks = new int[(Character.MAX_VALUE + 1) / BLOCK];
+        char[] classes = new char[4 * BLOCK];
+        int length = 0;
+        int[] uniform = new int[size];
+        Arrays.fill(uniform, -1);
+        Map<String, Integer> offsets = new HashMap<String, Integer>();
+        int first = 0;
+        for (int b = 0; b < blocks.length; b++) {
+            int low = b * BLOCK;
+            int high = low + BLOCK;
+            while (starts[first + 1] <= low) {
+                first++;
+            }
+            String block = null;
+            int cls = partition.classes[first];
+            if (starts[first + 1] >= high) {
+                if (uniform[cls] >= 0) {
+                    blocks[b] = uniform[cls];
+                    continue;
+                }
+            } else {
+                char[] table = new char[BLOCK];
+                for (int i = first; starts[i] < high; i++) {
+                    Arrays.fill(table, Math.max(starts[i], low) - low, Math.min(starts[i + 1], high) - low,
+                            (char) partition.classes[i]);
+                }
+                block = new String(table);
+                Integer offset = offsets.get(block);
+                if (offset != null) {
+                    blocks[b] = offset;
+                    continue;
+                }
+            }
+            if (length + BLOCK > classes.length) classes = Arrays.copyOf(classes, 2 * classes.length);
+            if (block == null) {
+                Arrays.fill(classes, length, length + BLOCK, (char) cls);
+                uniform[cls] = length;
+            } else {
+                block.getChars(0, BLOCK, classes, length);
+                offsets.put(block, length);
+            }
+            blocks[b] = length;
+            length += BLOCK;
+        }
+        return new Alphabet(blocks, Arrays.copyOf(classes, length), Arrays.copyOf(representatives, size));
+    }
+
+    /**
+     * @return index of interval which starts with character, or number of intervals for the end of characters
+     */
+    private static int index(int[] starts, int intervals, int c) {
+        return Arrays.binarySearch(starts, 0, intervals + 1, c);
+    }
+
+    /**
+     * Classes of intervals refined by predicates one by one
+     */
+    private static final class Partition {
+        /** Class of every interval */
+        final int[] classes;
+        /** Number of classes ever created, some of them may become empty */
+        int size = 1;
+        /** Class which contained part of predicate is split to, for the current predicate */
+        private int[] splits = new int[16];
+        /** Number of predicate for which split is created */
+        private int[] predicates = new int[16];
+        private int predicate;
+
+        Partition(int intervals) {
+            classes = new int[intervals];
+        }
+
+        /**
+         * Start next predicate
+         */
+        void next() {
+            predicate++;
+        }
+
+        /**
+         * Move intervals from..to - 1 to new classes, intervals of one class move to the same class
+         */
+        void split(int from, int to) {
+            for (int i = from; i < to; i++) {
+                int cls = classes[i];
+                if (predicates[cls] != predicate) {
+                    if (size == splits.length) {
+                        splits = Arrays.copyOf(splits, 2 * size);
+                        predicates = Arrays.copyOf(predicates, 2 * size);
+                    }
+                    predicates[cls] = predicate;
+                    splits[cls] = size++;
+                }
+                classes[i] = splits[cls];
+            }
+        }
+    }
+
+    /**
+     * @param c character
+     * @return class of character
+     */
+    int classOf(char c) {
+        return classes[blocks[c >>> 8] + (c & 0xFF)];
+    }
+
+    /**
+     * @param cls class
+     * @return some character of class
+     */
+    char representative(int cls) {
+        return representatives[cls];
+    }
+
+    /**
+     * @return number of classes
+     */
+    int size() {
+        return representatives.length;
+    }
+
+    /**
+     * @return number of distinct blocks in character to class table
+     */
+    int blockCount() {
+        return classes.length / BLOCK;
+    }
+}
@@ -24,6 +24,26 @@ final class AlternativeNode implements AST {
         return secondAlternative;
     }
 
+    /**
+     * Alternatives of chain of nodes: a|b|c is parsed as a|(b|c), this method gives [a], [b], [c].
+     * Visitors use it to handle long chains in loop instead of recursion
+     * @return first alternatives of this node and of alternatives nested in its second one,
+     *         then the second alternative of the last node
+     */
+    List<List<AST>> alternatives() {
+        List<List<AST>> alternatives = new ArrayList<List<AST>>();
+        AlternativeNode node = this;
+        while (true) {
+            alternatives.add(node.firstAlternative);
+            List<AST> second = node.secondAlternative;
+            if (second.size() != 1 || !(second.get(0) instanceof AlternativeNode)) {
+                alternatives.add(second);
+                return alternatives;
+            }
+            node = (AlternativeNode) second.get(0);
+        }
+    }
+
     @Override
     public Token token() {
         return token;
@@ -0,0 +1,168 @@
+package nd.regex;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of characters compiled from character class.
+ * Characters below 256 are looked up in a bitmap, others by binary search over
+ * sorted, disjoint and non-adjacent inclusive intervals. Negation is applied when class is built,
+ * so matching never depends on how class was written.
+ */
+final class CharClass {
+
+    private static final int ASCII = 256;
+
+    static final CharClass EMPTY = new CharClass(new int[0]);
+    static final CharClass ANY = new CharClass(new int[] {Character.MIN_VALUE, Character.MAX_VALUE});
+    static final CharClass DIGIT = of('0', '9');
+    static final CharClass NON_DIGIT = DIGIT.complement();
+    static final CharClass WHITESPACE = of(' ', ' ', '\t', '\r');
+    static final CharClass NON_WHITESPACE = WHITESPACE.complement();
+    static final CharClass WORD_CHARACTER = of('a', 'z', 'A', 'Z', '0', '9', '_', '_');
+    static final CharClass NON_WORD_CHARACTER = WORD_CHARACTER.complement();
+
+    /** Membership of characters below 256 */
+    private final long[] bitmap = new long[ASCII / 64];
+    /** Intervals: low0, high0, low1, high1, ... */
+    private final int[] ranges;
+    /** Index in {@link #ranges} of the first interval which contains characters from 256 */
+    private final int wide;
+
+    private CharClass(int[] ranges) {
+        this.ranges = ranges;
+        int i = 0;
+        for (; i < ranges.length && ranges[i] < ASCII; i += 2) {
+            for (int c = ranges[i]; c <= ranges[i + 1] && c < ASCII; c++) {
+                bitmap[c >>> 6] |= 1L << c;
+            }
+        }
+        this.wide = i > 0 && ranges[i - 1] >= ASCII ? i - 2 : i;
+    }
+
+    /**
+     * Create class from inclusive intervals in any order, intervals may overlap
+     * @param bounds low0, high0, low1, high1, ...
+     * @return class
+     */
+    static CharClass of(int... bounds) {
+        return new CharClass(normalize(bounds.clone()));
+    }
+
+    /**
+     * @param type token type of predefined character class
+     * @return shared class or null if token type is not a predefined class
+     */
+    static CharClass predefined(Token.Type type) {
+        switch (type) {
+            case CLASS_ANY_CHARACTER:      return ANY;
+            case CLASS_DIGIT:              return DIGIT;
+            case CLASS_NON_DIGIT:          return NON_DIGIT;
+            case CLASS_WHITESPACE:         return WHITESPACE;
+            case CLASS_NON_WHITESPACE:     return NON_WHITESPACE;
+            case CLASS_WORD_CHARACTER:     return WORD_CHARACTER;
+            case CLASS_NON_WORD_CHARACTER: return NON_WORD_CHARACTER;
+            default:                       return null;
+        }
+    }
+
+    boolean contains(char c) {
+        if (c < ASCII) return (bitmap[c >>> 6] & (1L << c)) != 0;
+        int low = wide >> 1;
+        int high = (ranges.length >> 1) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (c < ranges[2 * middle]) {
+                high = middle - 1;
+            } else if (c > ranges[2 * middle + 1]) {
+                low = middle + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return intervals of class, array must not be modified
+     */
+    int[] ranges() {
+        return ranges;
+    }
+
+    boolean isEmpty() {
+        return ranges.length == 0;
+    }
+
+    CharClass union(CharClass other) {
+        if (other.isEmpty()) return this;
+        if (isEmpty()) return other;
+        int[] all = Arrays.copyOf(ranges, ranges.length + other.ranges.length);
+        System.arraycopy(other.ranges, 0, all, ranges.length, other.ranges.length);
+        return new CharClass(normalize(all));
+    }
+
+    CharClass complement() {
+        int[] result = new int[ranges.length + 2];
+        int n = 0;
+        int low = Character.MIN_VALUE;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > low) {
+                result[n++] = low;
+                result[n++] = ranges[i] - 1;
+            }
+            low = ranges[i + 1] + 1;
+        }
+        if (low <= Character.MAX_VALUE) {
+            result[n++] = low;
+            result[n++] = Character.MAX_VALUE;
+        }
+        return new CharClass(Arrays.copyOf(result, n));
+    }
+
+    /**
+     * Sort intervals by low bound, then merge overlapping and adjacent ones
+     */
+    private static int[] normalize(int[] all) {
+        //interval is packed to one long ordered by low bound, so intervals are sorted at once
+        long[] intervals = new long[all.length / 2];
+        for (int i = 0; i < intervals.length; i++) {
+            intervals[i] = (long) all[2 * i] << 32 | all[2 * i + 1] & 0xffffffffL;
+        }
+        Arrays.sort(intervals);
+        for (int i = 0; i < intervals.length; i++) {
+            all[2 * i] = (int) (intervals[i] >> 32);
+            all[2 * i + 1] = (int) intervals[i];
+        }
+        int n = 0;
+        for (int i = 0; i < all.length; i += 2) {
+            if (all[i] > all[i + 1]) continue;
+            if (n > 0 && all[i] <= all[n - 1] + 1) {
+                all[n - 1] = Math.max(all[n - 1], all[i + 1]);
+            } else {
+                all[n++] = all[i];
+                all[n++] = all[i + 1];
+            }
+        }
+        return Arrays.copyOf(all, n);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof CharClass && Arrays.equals(ranges, ((CharClass) other).ranges);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ranges);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < ranges.length; i += 2) {
+            sb.append(String.format("\\u%04x", ranges[i]));
+            if (ranges[i + 1] > ranges[i]) sb.append(String.format("-\\u%04x", ranges[i + 1]));
+        }
+        return sb.append(']').toString();
+    }
+}
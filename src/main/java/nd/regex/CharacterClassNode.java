@@ -14,7 +14,16 @@ final class CharacterClassNode implements AST {
 
     CharacterClassNode(Token token) {
         this.token = token;
-        exclusive = token.type() == Token.Type.LEFT_BRACKET_CARET;
+        switch (token.type()) {
+            case LEFT_BRACKET_CARET:
+            case CLASS_NON_DIGIT:
+            case CLASS_NON_WHITESPACE:
+            case CLASS_NON_WORD_CHARACTER:
+                exclusive = true;
+                break;
+            default:
+                exclusive = false;
+        }
     }
 
     boolean exclusive() {
@@ -0,0 +1,147 @@
+package nd.regex;
+
+import java.util.Arrays;
+
+import static nd.regex.Program.*;
+
+/**
+ * Epsilon closures of {@link Program} precomputed for {@link NFA}.
+ * Closure of instruction lists instructions reached from it through {@link Program#SPLIT} and {@link Program#SAVE},
+ * which consume nothing and do not depend on input: instructions which consume character, {@link Program#MATCH}
+ * and instructions with condition ({@link Program#LINE_START}, {@link Program#LINE_END}, {@link Program#COUNT}),
+ * which NFA follows itself. Closure is in priority order, every instruction is listed once
+ * with capture slots saved on the preferred path to it.
+ * <p>
+ * Closures are computed for instructions which threads continue with after consuming a character,
+ * until total size of closures reaches limit. Closures are immutable and can be shared between threads.
+ */
+final class Closures {
+
+    /** Maximal total number of entries in all closures */
+    static final int MAX_ENTRIES = 1 << 20;
+
+    private static final int NONE = -1;
+
+    /** Entries of closure of pc are from[pc] until to[pc] or from[pc] is NONE if closure is not computed */
+    private final int[] from;
+    private final int[] to;
+    private final int[] targets;
+    /** Capture slots saved on the path to target or null */
+    private final int[][] saves;
+
+    Closures(Program program) {
+        int n = program.size();
+        from = new int[n];
+        to = new int[n];
+        Arrays.fill(from, NONE);
+        int[] targets = new int[n];
+        int[][] saves = new int[n][];
+        int size = 0;
+        SparseSet visited = new SparseSet(n);
+        int[] stack = new int[2 * n + 1];
+        int[][] saveStack = new int[stack.length][];
+        for (int root : roots(program)) {
+            if (from[root] != NONE) continue;
+            if (size + n > MAX_ENTRIES) break;
+            if (size + n > targets.length) {
+                targets = Arrays.copyOf(targets, Math.max(size + n, 2 * targets.length));
+                saves = Arrays.copyOf(saves, targets.length);
+            }
+            from[root] = size;
+            visited.clear();
+            int top = 0;
+            stack[top] = root;
+            saveStack[top++] = null;
+            while (top > 0) {
+                int pc = stack[--top];
+                int[] saved = saveStack[top];
+                if (!visited.add(pc)) continue;
+                switch (program.op[pc]) {
+                    case SPLIT:
+                        stack[top] = program.alt[pc];
+                        saveStack[top++] = saved;
+                        stack[top] = program.next[pc];
+                        saveStack[top++] = saved;
+                        break;
+                    case SAVE:
+                        stack[top] = program.next[pc];
+                        saveStack[top++] = append(saved, program.arg[pc]);
+                        break;
+                    default:
+                        targets[size] = pc;
+                        saves[size++] = saved;
+                }
+            }
+            to[root] = size;
+        }
+        this.targets = Arrays.copyOf(targets, size);
+        this.saves = Arrays.copyOf(saves, size);
+    }
+
+    /**
+     * @return start of program and instructions following consuming instructions and counters
+     */
+    private static int[] roots(Program program) {
+        int[] roots = new int[program.size() + 1];
+        int count = 0;
+        roots[count++] = program.start;
+        for (int pc = 0; pc < program.size(); pc++) {
+            switch (program.op[pc]) {
+                case CHAR:
+                case ANY:
+                case CLASS:
+                case COUNT:
+                    roots[count++] = program.next[pc];
+                    break;
+            }
+        }
+        return Arrays.copyOf(roots, count);
+    }
+
+    private static int[] append(int[] saved, int slot) {
+        if (saved == null) return new int[] {slot};
+        int[] result = Arrays.copyOf(saved, saved.length + 1);
+        result[saved.length] = slot;
+        return result;
+    }
+
+    /**
+     * @param pc instruction
+     * @return true if closure of instruction is computed
+     */
+    boolean computed(int pc) {
+        return from[pc] != NONE;
+    }
+
+    /**
+     * @param pc instruction with computed closure
+     * @return index of the first entry of its closure
+     */
+    int from(int pc) {
+        return from[pc];
+    }
+
+    /**
+     * @param pc instruction with computed closure
+     * @return index after the last entry of its closure
+     */
+    int to(int pc) {
+        return to[pc];
+    }
+
+    /**
+     * @param entry index of entry
+     * @return instruction reached
+     */
+    int target(int entry) {
+        return targets[entry];
+    }
+
+    /**
+     * @param entry index of entry
+     * @return capture slots saved on the path to instruction in order of saving or null if there are none
+     */
+    int[] saves(int entry) {
+        return saves[entry];
+    }
+}
@@ -0,0 +1,333 @@
+package nd.regex;
+
+import java.util.Arrays;
+
+/**
+ * Deterministic Finite Automaton (DFA) built completely at compile time.
+ * DFA is built by subset construction over {@link LazyDFA}, then minimized with Hopcroft's algorithm
+ * and stored as dense transition table over {@link Alphabet} classes.
+ * <p>
+ * DFA is immutable and can be shared between threads.
+ */
+final class DFA {
+
+    private static final int NONE = -1;
+    /** Speculative runs which reached the same state are merged every this number of characters */
+    private static final int MERGE_INTERVAL = 64;
+
+    private final Alphabet alphabet;
+    private final int classCount;
+    /** Transitions: table[state * classCount + class] */
+    private final int[] table;
+    private final boolean[] accepts;
+    private final int start;
+    /** State which never leads to match or NONE */
+    private final int dead;
+
+    private DFA(Alphabet alphabet, int[] table, boolean[] accepts, int start) {
+        this.alphabet = alphabet;
+        this.classCount = alphabet.size();
+        this.table = table;
+        this.accepts = accepts;
+        this.start = start;
+        this.dead = findDead();
+    }
+
+    /**
+     * Build minimal DFA for program
+     * @param program program
+     * @param stateLimit maximum number of states before minimization
+     * @return DFA or null if subset construction produces more than stateLimit states
+     */
+    static DFA build(Program program, int stateLimit) {
+        int k = program.alphabet.size();
+        LazyDFA lazy = new LazyDFA(program, Long.MAX_VALUE);
+        int start = lazy.start();
+        int[] table = new int[16 * k];
+        for (int state = 0; state < lazy.stateCount(); state++) {
+            if (state * k == table.length) table = Arrays.copyOf(table, table.length * 2);
+            for (int c = 0; c < k; c++) {
+                table[state * k + c] = lazy.transition(state, c);
+                if (lazy.stateCount() > stateLimit) return null;
+            }
+        }
+        int n = lazy.stateCount();
+        boolean[] accepts = new boolean[n];
+        for (int state = 0; state < n; state++) {
+            accepts[state] = lazy.accepts(state);
+        }
+        return minimize(program.alphabet, Arrays.copyOf(table, n * k), accepts, start);
+    }
+
+    /**
+     * Check if string matches DFA
+     * @param str string to check
+     * @return true if string matches
+     */
+    boolean matches(String str) {
+        return matches(str, 0, str.length());
+    }
+
+    /**
+     * Check if region of input matches DFA
+     * @param input input
+     * @param start start of region
+     * @param end end of region, exclusive
+     * @return true if region matches
+     */
+    boolean matches(CharSequence input, int start, int end) {
+        return accepts[run(this.start, input, start, end)];
+    }
+
+    /**
+     * Run DFA over region from every state at once, for chunk of input whose start state is not known yet.
+     * Runs which reach the same state are merged, so for most patterns cost quickly falls to a single run.
+     * @param input input
+     * @param start start of region
+     * @param end end of region, exclusive
+     * @return state at the end of region for every state at its start
+     */
+    int[] transitions(CharSequence input, int start, int end) {
+        int n = accepts.length;
+        //run of every start state or NONE if it is dead, and current state of every run
+        int[] runOf = new int[n];
+        int[] runs = new int[n];
+        int count = 0;
+        for (int state = 0; state < n; state++) {
+            runOf[state] = state == dead ? NONE : count;
+            if (state != dead) runs[count++] = state;
+        }
+        int[] merged = new int[n];
+        Arrays.fill(merged, NONE);
+        int[] renumber = new int[n];
+        int i = start;
+        while (i < end && count > 1) {
+            for (int stop = Math.min(end, i + MERGE_INTERVAL); i < stop; i++) {
+                int cls = alphabet.classOf(input.charAt(i));
+                for (int r = 0; r < count; r++) {
+                    runs[r] = table[runs[r] * classCount + cls];
+                }
+            }
+            //dead runs are dropped, they never leave dead state
+            int distinct = 0;
+            for (int r = 0; r < count; r++) {
+                int state = runs[r];
+                if (state != dead && merged[state] == NONE) {
+                    merged[state] = distinct;
+                    runs[distinct++] = state;
+                }
+                renumber[r] = state == dead ? NONE : merged[state];
+            }
+            for (int r = 0; r < distinct; r++) {
+                merged[runs[r]] = NONE;
+            }
+            for (int state = 0; state < n; state++) {
+                if (runOf[state] != NONE) runOf[state] = renumber[runOf[state]];
+            }
+            count = distinct;
+        }
+        if (count == 1) runs[0] = run(runs[0], input, i, end);
+        int[] result = new int[n];
+        for (int state = 0; state < n; state++) {
+            result[state] = runOf[state] == NONE ? dead : runs[runOf[state]];
+        }
+        return result;
+    }
+
+    /**
+     * @return state after region, when run is started from given state
+     */
+    private int run(int state, CharSequence input, int start, int end) {
+        if (input instanceof String) {
+            //the most common input is matched without interface calls
+            String str = (String) input;
+            for (int i = start; i < end && state != dead; i++) {
+                state = table[state * classCount + alphabet.classOf(str.charAt(i))];
+            }
+        } else {
+            for (int i = start; i < end && state != dead; i++) {
+                state = table[state * classCount + alphabet.classOf(input.charAt(i))];
+            }
+        }
+        return state;
+    }
+
+    /**
+     * @return start state
+     */
+    int start() {
+        return start;
+    }
+
+    /**
+     * @param state current state
+     * @param c character
+     * @return target state
+     */
+    int next(int state, char c) {
+        return table[state * classCount + alphabet.classOf(c)];
+    }
+
+    /**
+     * @param state state
+     * @return true if input matches when it ends in this state
+     */
+    boolean accepts(int state) {
+        return accepts[state];
+    }
+
+    /**
+     * @param state state
+     * @return true if no input leads from state to match
+     */
+    boolean isDead(int state) {
+        return state == dead;
+    }
+
+    /**
+     * @return number of states
+     */
+    int stateCount() {
+        return accepts.length;
+    }
+
+    /**
+     * @return number of alphabet classes
+     */
+    int classCount() {
+        return classCount;
+    }
+
+    private int findDead() {
+        for (int state = 0; state < accepts.length; state++) {
+            if (accepts[state]) continue;
+            boolean loop = true;
+            for (int c = 0; c < classCount && loop; c++) {
+                loop = table[state * classCount + c] == state;
+            }
+            if (loop) return state;
+        }
+        return NONE;
+    }
+
+    /**
+     * Minimize DFA with Hopcroft's partition refinement
+     */
+    private static DFA minimize(Alphabet alphabet, int[] table, boolean[] accepts, int start) {
+        int n = accepts.length;
+        int k = alphabet.size();
+
+        //inverse transitions: sources of target t with class c are inverse[offsets[c * n + t] .. offsets[c * n + t + 1])
+        int[] offsets = new int[n * k + 1];
+        for (int s = 0; s < n; s++) {
+            for (int c = 0; c < k; c++) {
+                offsets[c * n + table[s * k + c] + 1]++;
+            }
+        }
+        for (int i = 0; i < n * k; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] inverse = new int[n * k];
+        int[] fill = Arrays.copyOf(offsets, n * k);
+        for (int s = 0; s < n; s++) {
+            for (int c = 0; c < k; c++) {
+                inverse[fill[c * n + table[s * k + c]]++] = s;
+            }
+        }
+
+        //partition: states of block b are elements[first[b] .. end[b]), marked ones are moved to its beginning
+        int[] elements = new int[n];
+        int[] location = new int[n];
+        int[] blockOf = new int[n];
+        int[] first = new int[n];
+        int[] end = new int[n];
+        int[] marked = new int[n];
+        int blocks = 0;
+        int size = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int blockStart = size;
+            for (int s = 0; s < n; s++) {
+                if (accepts[s] == (pass == 0)) {
+                    elements[size] = s;
+                    location[s] = size++;
+                    blockOf[s] = blocks;
+                }
+            }
+            if (size > blockStart) {
+                first[blocks] = blockStart;
+                end[blocks] = size;
+                blocks++;
+            }
+        }
+
+        boolean[] waiting = new boolean[n * k];
+        int[] work = new int[n * k];
+        int top = 0;
+        for (int b = 0; b < blocks; b++) {
+            for (int c = 0; c < k; c++) {
+                waiting[b * k + c] = true;
+                work[top++] = b * k + c;
+            }
+        }
+        int[] splitter = new int[n];
+        int[] touched = new int[n];
+        while (top > 0) {
+            int item = work[--top];
+            waiting[item] = false;
+            int a = item / k;
+            int c = item % k;
+            int splitterSize = 0;
+            for (int i = first[a]; i < end[a]; i++) {
+                splitter[splitterSize++] = elements[i];
+            }
+            int touchedCount = 0;
+            for (int i = 0; i < splitterSize; i++) {
+                int t = splitter[i];
+                for (int j = offsets[c * n + t]; j < offsets[c * n + t + 1]; j++) {
+                    int s = inverse[j];
+                    int b = blockOf[s];
+                    int position = first[b] + marked[b];
+                    if (location[s] < position) continue;
+                    int other = elements[position];
+                    elements[position] = s;
+                    elements[location[s]] = other;
+                    location[other] = location[s];
+                    location[s] = position;
+                    if (marked[b]++ == 0) touched[touchedCount++] = b;
+                }
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                int b = touched[i];
+                int m = marked[b];
+                marked[b] = 0;
+                if (m == end[b] - first[b]) continue;
+                int nb = blocks++;
+                first[nb] = first[b];
+                end[nb] = first[b] + m;
+                first[b] = end[nb];
+                for (int j = first[nb]; j < end[nb]; j++) {
+                    blockOf[elements[j]] = nb;
+                }
+                boolean smallerNew = end[nb] - first[nb] <= end[b] - first[b];
+                for (int d = 0; d < k; d++) {
+                    int add = waiting[b * k + d] || smallerNew ? nb : b;
+                    if (!waiting[add * k + d]) {
+                        waiting[add * k + d] = true;
+                        work[top++] = add * k + d;
+                    }
+                }
+            }
+        }
+
+        int[] minimalTable = new int[blocks * k];
+        boolean[] minimalAccepts = new boolean[blocks];
+        for (int b = 0; b < blocks; b++) {
+            int representative = elements[first[b]];
+            minimalAccepts[b] = accepts[representative];
+            for (int c = 0; c < k; c++) {
+                minimalTable[b * k + c] = blockOf[table[representative * k + c]];
+            }
+        }
+        return new DFA(alphabet, minimalTable, minimalAccepts, blockOf[start]);
+    }
+}
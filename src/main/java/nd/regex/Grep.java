@@ -0,0 +1,258 @@
+package nd.regex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Search of lines containing match of pattern in file.
+ * File is mapped to memory in windows and bytes are decoded and fed to lazily built DFA of
+ * {@link Program#unanchored()} program one by one, so no strings are created. The rest of line is skipped
+ * as soon as match is found or DFA reaches dead state. Lines are terminated by {@code '\n'}, carriage return
+ * before the end of line is not part of line. Every line is matched as separate input, so {@code ^} and {@code $}
+ * match at line bounds.
+ * <p>
+ * Line is not decoded at all if it lacks some of {@link Program#required} literals, they are searched
+ * as encoded bytes and the next occurrence of every literal is remembered, so window is searched for literal once.
+ * <p>
+ * Bytes are decoded as ISO-8859-1, US-ASCII or UTF-8. Malformed and overlong UTF-8 sequences and encoded
+ * surrogates are decoded as U+FFFD, code points above U+FFFF are fed as surrogate pairs.
+ */
+final class Grep {
+
+    /** Size of mapped window, mapping whole file at once may exhaust address space */
+    static final long WINDOW = 1 << 26;
+    private static final char REPLACEMENT = '\uFFFD';
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private final LazyDFA dfa;
+    private final boolean utf8;
+    /** Encoded literals which every matching line contains */
+    private final byte[][] required;
+    /** Position in window of the next occurrence of every literal, it is valid if it is not before line start */
+    private final int[] occurrences;
+    private int state;
+    /** True if the rest of line does not change result */
+    private boolean decided;
+    /** True if the last byte is carriage return, it is fed only when the line goes on after it */
+    private boolean carriageReturn;
+    /** Number of continuation bytes expected for UTF-8 sequence, code point decoded so far and its minimal value */
+    private int pending;
+    private int codePoint;
+    private int minimum;
+
+    private Grep(Program program, Charset charset) {
+        String name = charset.name();
+        if (name.equals("UTF-8")) {
+            utf8 = true;
+        } else if (name.equals("ISO-8859-1") || name.equals("US-ASCII")) {
+            utf8 = false;
+        } else {
+            throw new IllegalArgumentException("Unsupported charset " + charset);
+        }
+        this.dfa = new LazyDFA(program.unanchored(), Pattern.DFA_MEMORY_LIMIT);
+        this.required = encode(program.required, utf8 ? UTF_8 : ISO_8859_1);
+        this.occurrences = new int[required.length];
+    }
+
+    /**
+     * Literal is searched as bytes only if they are the only encoding of it which is decoded to it
+     */
+    private static byte[][] encode(String[] literals, Charset charset) {
+        List<byte[]> encoded = new ArrayList<byte[]>();
+        for (String literal : literals) {
+            //replacement character is also decoded from malformed bytes
+            if (literal.indexOf(REPLACEMENT) >= 0) continue;
+            byte[] bytes = literal.getBytes(charset);
+            if (new String(bytes, charset).equals(literal)) encoded.add(bytes);
+        }
+        return encoded.toArray(new byte[encoded.size()][]);
+    }
+
+    /**
+     * Find lines of file containing match of program
+     * @param program program
+     * @param file file
+     * @param charset encoding of file
+     * @param listener receiver of matching lines
+     * @param window size of mapped window in bytes
+     * @return number of matching lines reported to listener
+     * @throws IOException if file can not be read
+     */
+    static long grep(Program program, Path file, Charset charset, GrepListener listener, long window)
+            throws IOException {
+        return new Grep(program, charset).grep(file, listener, window);
+    }
+
+    private long grep(Path file, GrepListener listener, long window) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            long count = 0;
+            long line = 1;
+            long lineStart = 0;
+            startLine();
+            for (long position = 0; position < size; position += window) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(window, size - position));
+                int limit = buffer.limit();
+                Arrays.fill(occurrences, -1);
+                int from = 0;
+                while (from < limit) {
+                    int end = indexOf(buffer, (byte) '\n', from, limit);
+                    if (end < 0) {
+                        //line goes on in the next window
+                        decode(buffer, from, limit);
+                        break;
+                    }
+                    //only line which lies in window entirely is checked for literals
+                    boolean matched = false;
+                    if (position + from != lineStart || mayMatch(buffer, from, end)) {
+                        decode(buffer, from, end);
+                        matched = endLine();
+                    }
+                    if (matched) {
+                        count++;
+                        long lineEnd = position + end - (carriageReturn ? 1 : 0);
+                        if (!listener.matched(line, lineStart, lineEnd - lineStart)) return count;
+                    }
+                    line++;
+                    lineStart = position + end + 1;
+                    startLine();
+                    from = end + 1;
+                }
+            }
+            //the last line may have no terminator
+            if (lineStart < size && endLine()) {
+                count++;
+                listener.matched(line, lineStart, size - (carriageReturn ? 1 : 0) - lineStart);
+            }
+            return count;
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void startLine() {
+        state = dfa.start();
+        decided = dfa.matched(state);
+        carriageReturn = false;
+        pending = 0;
+    }
+
+    /**
+     * Check if region of window contains all required literals
+     */
+    private boolean mayMatch(ByteBuffer buffer, int from, int to) {
+        for (int i = 0; i < required.length; i++) {
+            if (occurrences[i] < from) {
+                int index = indexOf(buffer, required[i], from, buffer.limit());
+                occurrences[i] = index < 0 ? buffer.limit() : index;
+            }
+            if (occurrences[i] + required[i].length > to) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == b) return i;
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte[] literal, int from, int to) {
+        int last = to - literal.length;
+        for (int i = from; i <= last; i++) {
+            int j = 0;
+            while (j < literal.length && buffer.get(i + j) == literal[j]) {
+                j++;
+            }
+            if (j == literal.length) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Decode region of window, carriage return is held back until the next byte
+     */
+    private void decode(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (carriageReturn && !decided) decode((byte) '\r');
+            carriageReturn = b == '\r';
+            if (!carriageReturn && !decided) decode(b);
+        }
+    }
+
+    /**
+     * @return true if line contains match
+     */
+    private boolean endLine() {
+        if (!decided && pending > 0) feed(REPLACEMENT);
+        return dfa.matched(state) || dfa.accepts(state);
+    }
+
+    private void decode(byte b) {
+        if (!utf8) {
+            feed((char) (b & 0xFF));
+        } else if (b >= 0) {
+            if (pending > 0) feed(REPLACEMENT);
+            pending = 0;
+            feed((char) b);
+        } else if ((b & 0xC0) == 0x80) {
+            //continuation byte
+            if (pending == 0) {
+                feed(REPLACEMENT);
+            } else {
+                codePoint = codePoint << 6 | b & 0x3F;
+                if (--pending == 0) feedCodePoint(codePoint);
+            }
+        } else {
+            if (pending > 0) feed(REPLACEMENT);
+            if ((b & 0xE0) == 0xC0) {
+                pending = 1;
+                codePoint = b & 0x1F;
+                minimum = 0x80;
+            } else if ((b & 0xF0) == 0xE0) {
+                pending = 2;
+                codePoint = b & 0x0F;
+                minimum = 0x800;
+            } else if ((b & 0xF8) == 0xF0) {
+                pending = 3;
+                codePoint = b & 0x07;
+                minimum = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+            } else {
+                pending = 0;
+                feed(REPLACEMENT);
+            }
+        }
+    }
+
+    private void feedCodePoint(int cp) {
+        if (cp < minimum || Character.MIN_SURROGATE <= cp && cp <= Character.MAX_SURROGATE) {
+            feed(REPLACEMENT);
+        } else if (cp < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            feed((char) cp);
+        } else if (cp <= Character.MAX_CODE_POINT) {
+            feed(Character.highSurrogate(cp));
+            feed(Character.lowSurrogate(cp));
+        } else {
+            feed(REPLACEMENT);
+        }
+    }
+
+    private void feed(char c) {
+        if (decided) return;
+        state = dfa.next(state, c);
+        decided = dfa.matched(state) || dfa.isDead(state);
+    }
+}
@@ -0,0 +1,16 @@
+package nd.regex;
+
+/**
+ * Receiver of lines found by {@link Pattern#grep(java.nio.file.Path, java.nio.charset.Charset, GrepListener)}
+ */
+public interface GrepListener {
+
+    /**
+     * Called for every line which contains match of pattern, in order of lines
+     * @param line number of line, lines are numbered from 1
+     * @param offset offset of the first byte of line in file
+     * @param length length of line in bytes without line terminator
+     * @return true to continue search, false to stop it
+     */
+    boolean matched(long line, long offset, long length);
+}
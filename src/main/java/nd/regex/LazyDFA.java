@@ -0,0 +1,523 @@
+package nd.regex;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static nd.regex.Program.*;
+
+/**
+ * Deterministic Finite Automaton (DFA) built lazily from {@link Program} while matching.
+ * Every DFA state is a canonical set of NFA threads, transitions over {@link Alphabet} classes
+ * are computed on first use and memoized, so on repetitive input almost every character costs
+ * a single array lookup.
+ * <p>
+ * Memory used by states is limited. When limit is reached all states are flushed and DFA is rebuilt
+ * from the current state. If flushes happen so often that DFA makes no progress, matching gives up
+ * with {@link #FAILED} and caller should fall back to {@link NFA}.
+ * <p>
+ * Instance of this class is not thread-safe, every thread should use its own instance.
+ */
+final class LazyDFA {
+
+    static final int NO_MATCH = 0;
+    static final int MATCHES = 1;
+    static final int FAILED = -1;
+
+    private static final int UNKNOWN = -1;
+    private static final int[] NO_IDS = new int[0];
+    private static final long[] NO_THREADS = new long[0];
+    private static final int DEAD = 0;
+    /** Approximate memory used by state besides its transitions and threads */
+    private static final int STATE_OVERHEAD = 96;
+    /** DFA gives up if it is flushed more often than every (number of states * this) characters */
+    private static final int MIN_PROGRESS = 10;
+    private static final int MIN_FLUSHES = 3;
+    private static final int NEVER_GIVE_UP = -1;
+
+    private final Program program;
+    private final Alphabet alphabet;
+    private final int width;
+    private final boolean lineStart;
+    private final long memoryLimit;
+
+    private final Map<Key, Integer> states = new HashMap<Key, Integer>();
+    private long[][] threads = new long[16][];
+    private boolean[] accepts = new boolean[16];
+    /** Numbers of patterns matching when input ends in state */
+    private int[][] matches = new int[16][];
+    /** True if state contains match instruction, so input matches whatever follows */
+    private boolean[] matched = new boolean[16];
+    /** Transitions: table[state * width + class] */
+    private int[] table;
+    private int stateCount;
+    private long memory;
+    private int start;
+    /** Number of flushes and position of the last one in current run */
+    private int flushes;
+    private int lastFlush;
+
+    /** Instructions visited by threads outside of counters */
+    private final SparseSet work;
+    /** Counters visited with enough repetitions to leave them */
+    private final SparseSet counters;
+    /** Least number of repetitions counter is visited with, for counters in {@link #counters} */
+    private final int[] least;
+    /** Threads visited in order of visiting */
+    private long[] visited;
+    private int visitedCount;
+    private long[] stack;
+    private long[] buffer;
+    private final int[] ids;
+
+    /**
+     * Create DFA
+     * @param program program to build DFA from
+     * @param memoryLimit maximum memory in bytes used by DFA states
+     */
+    LazyDFA(Program program, long memoryLimit) {
+        this.program = program;
+        this.alphabet = program.alphabet;
+        this.width = alphabet.size();
+        this.lineStart = program.contains(LINE_START);
+        this.memoryLimit = memoryLimit;
+        this.table = new int[16 * width];
+        this.work = new SparseSet(program.size());
+        this.counters = new SparseSet(program.size());
+        this.least = new int[program.size()];
+        this.visited = new long[program.size()];
+        this.stack = new long[3 * program.size() + 1];
+        this.buffer = new long[program.size()];
+        this.ids = new int[program.size()];
+        reset();
+    }
+
+    /**
+     * Check if string matches program
+     * @param str string to check
+     * @return {@link #MATCHES}, {@link #NO_MATCH} or {@link #FAILED} if DFA gave up
+     */
+    int match(String str) {
+        return match(str, 0, str.length());
+    }
+
+    /**
+     * Check if region of input matches program
+     * @param input input
+     * @param start start of region
+     * @param end end of region, exclusive
+     * @return {@link #MATCHES}, {@link #NO_MATCH} or {@link #FAILED} if DFA gave up
+     */
+    int match(CharSequence input, int start, int end) {
+        int state = run(input, start, end);
+        if (state == FAILED) return FAILED;
+        return accepts[state] ? MATCHES : NO_MATCH;
+    }
+
+    /**
+     * Check if bytes between position and limit of buffer match program compiled by {@link Utf8Compiler}.
+     * DFA never gives up here, states are flushed as often as memory limit requires.
+     * @param bytes buffer, its position is not changed
+     * @return {@link #MATCHES} or {@link #NO_MATCH}
+     */
+    int match(ByteBuffer bytes) {
+        int state = start();
+        for (int i = bytes.position(); i < bytes.limit() && state != DEAD; i++) {
+            state = next(state, (char) (bytes.get(i) & 0xFF));
+        }
+        return accepts[state] ? MATCHES : NO_MATCH;
+    }
+
+    /**
+     * Run DFA over string
+     * @param str string
+     * @return state after the last character or {@link #FAILED} if DFA gave up
+     */
+    int run(String str) {
+        return run(str, 0, str.length());
+    }
+
+    /**
+     * Run DFA over region of input
+     * @param input input
+     * @param start start of region
+     * @param end end of region, exclusive
+     * @return state after the last character or {@link #FAILED} if DFA gave up
+     */
+    int run(CharSequence input, int start, int end) {
+        //the most common input is matched without interface calls
+        return input instanceof String ? run((String) input, start, end) : runSequence(input, start, end);
+    }
+
+    private int run(String str, int start, int end) {
+        flushes = 0;
+        lastFlush = start;
+        int state = start();
+        for (int i = start; i < end; i++) {
+            char c = str.charAt(i);
+            int cls = alphabet.classOf(c);
+            int target = table[state * width + cls];
+            if (target == UNKNOWN) {
+                target = build(state, c, cls, i);
+                if (target == FAILED) return FAILED;
+            }
+            state = target;
+            if (state == DEAD) return DEAD;
+        }
+        return state;
+    }
+
+    private int runSequence(CharSequence input, int start, int end) {
+        flushes = 0;
+        lastFlush = start;
+        int state = start();
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            int cls = alphabet.classOf(c);
+            int target = table[state * width + cls];
+            if (target == UNKNOWN) {
+                target = build(state, c, cls, i);
+                if (target == FAILED) return FAILED;
+            }
+            state = target;
+            if (state == DEAD) return DEAD;
+        }
+        return state;
+    }
+
+    /**
+     * Make transition with one character. DFA never gives up here: states are flushed
+     * as often as memory limit requires, so state numbers known before the call may become invalid.
+     * @param state current state
+     * @param c character
+     * @return target state
+     */
+    int next(int state, char c) {
+        int cls = alphabet.classOf(c);
+        int target = table[state * width + cls];
+        return target != UNKNOWN ? target : build(state, c, cls, NEVER_GIVE_UP);
+    }
+
+    /**
+     * @param state state
+     * @return true if no input leads from state to match
+     */
+    boolean isDead(int state) {
+        return state == DEAD;
+    }
+
+    /**
+     * @return start state
+     */
+    int start() {
+        if (start == UNKNOWN) start = startState();
+        return start;
+    }
+
+    /**
+     * Get transition from state with character class, build target state if needed.
+     * Memory limit is not checked, so states are never flushed by this method.
+     * @param state state
+     * @param cls character class
+     * @return target state
+     */
+    int transition(int state, int cls) {
+        int target = table[state * width + cls];
+        if (target == UNKNOWN) {
+            char c = alphabet.representative(cls);
+            target = state(key(step(state, c), false));
+            table[state * width + cls] = target;
+        }
+        return target;
+    }
+
+    /**
+     * @param state state
+     * @return true if input matches when it ends in this state
+     */
+    boolean accepts(int state) {
+        return accepts[state];
+    }
+
+    /**
+     * @param state state
+     * @return true if state contains match instruction, for {@link Program#unanchored()} program
+     *         it means that match is already found
+     */
+    boolean matched(int state) {
+        return matched[state];
+    }
+
+    /**
+     * @param state state
+     * @return numbers of patterns which match if input ends in this state, in ascending order
+     */
+    int[] matches(int state) {
+        return matches[state];
+    }
+
+    /**
+     * @param state state
+     * @return number of NFA threads which define state
+     */
+    int threadCount(int state) {
+        return threads[state].length;
+    }
+
+    /**
+     * @return number of states currently built, states are numbered from 0
+     */
+    int stateCount() {
+        return stateCount;
+    }
+
+    private void reset() {
+        states.clear();
+        stateCount = 0;
+        memory = 0;
+        start = UNKNOWN;
+        //dead state never matches and all its transitions lead to itself
+        int dead = state(new Key(NO_THREADS, false));
+        Arrays.fill(table, dead * width, (dead + 1) * width, dead);
+    }
+
+    private int startState() {
+        clearWork();
+        closure(thread(program.start, 0), true);
+        return state(key(collect(), true));
+    }
+
+    /**
+     * Build target of transition which is not known yet, flush states if memory limit is reached
+     * @param position position of character in input or {@link #NEVER_GIVE_UP}
+     * @return target state or {@link #FAILED} if states are flushed too often
+     */
+    private int build(int state, char c, int cls, int position) {
+        int count = step(state, c);
+        Key key = key(count, false);
+        Integer existing = states.get(key);
+        if (existing != null) {
+            table[state * width + cls] = existing;
+            return existing;
+        }
+        if (memory + stateMemory(count) > memoryLimit) {
+            if (position != NEVER_GIVE_UP && ++flushes > MIN_FLUSHES
+                    && position - lastFlush < MIN_PROGRESS * stateCount) return FAILED;
+            lastFlush = position;
+            reset();
+            return state(key);
+        }
+        int target = state(key);
+        table[state * width + cls] = target;
+        return target;
+    }
+
+    /**
+     * Collect threads reachable from state with character to {@link #buffer}
+     * @return number of collected threads
+     */
+    private int step(int state, char c) {
+        clearWork();
+        for (long thread : threads[state]) {
+            int pc = pc(thread);
+            if (program.accepts(pc, c)) closure(thread(program.next[pc], count(thread)), false);
+        }
+        return collect();
+    }
+
+    private void clearWork() {
+        work.clear();
+        counters.clear();
+        visitedCount = 0;
+    }
+
+    /**
+     * Follow instructions which consume nothing. End of input is not known yet,
+     * so {@link Program#LINE_END} is kept in the set and followed only by {@link #matchesAtEnd}.
+     * Threads inside of counters are collapsed at their counter: thread which reaches it with at least
+     * minimal number of repetitions is dropped if counter is already visited with not more repetitions,
+     * as that thread leaves counter at every position the dropped one could. Threads of state are sorted,
+     * so threads of one counter are stepped in ascending order of repetitions, and counter keeps
+     * threads with fewer repetitions than minimum and the one with the least number of repetitions above it.
+     */
+    private void closure(long thread, boolean atStart) {
+        int top = 0;
+        stack[top++] = thread;
+        while (top > 0) {
+            thread = stack[--top];
+            int pc = pc(thread);
+            int count = count(thread);
+            if (count == 0 && !work.add(pc)) continue;
+            if (program.op[pc] == COUNT && count >= program.arg[pc]) {
+                if (!counters.add(pc) && least[pc] <= count) continue;
+                least[pc] = count;
+            }
+            if (visitedCount == visited.length) visited = Arrays.copyOf(visited, 2 * visitedCount);
+            visited[visitedCount++] = thread;
+            if (top + 2 > stack.length) stack = Arrays.copyOf(stack, 2 * stack.length);
+            switch (program.op[pc]) {
+                case SPLIT:
+                    stack[top++] = thread(program.alt[pc], count);
+                    stack[top++] = thread(program.next[pc], count);
+                    break;
+                case SAVE:
+                    stack[top++] = thread(program.next[pc], count);
+                    break;
+                case LINE_START:
+                    if (atStart) stack[top++] = thread(program.next[pc], count);
+                    break;
+                case COUNT:
+                    if (count >= program.arg[pc]) stack[top++] = thread(program.next[pc], 0);
+                    if (count < program.alt[pc]) stack[top++] = thread(pc + 1, count + 1);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Copy threads which define state from {@link #visited} to {@link #buffer} in canonical order.
+     * Threads in body of one counter are sorted by repetitions. Thread with x repetitions leaves counter
+     * after min - x to max - x more characters, and all of them consume the same characters, so thread is dropped
+     * if the kept thread before it and the thread after it leave counter at every position it could.
+     * This keeps a few threads of counter with wide bounds whatever its minimum is.
+     */
+    private int collect() {
+        if (buffer.length < visitedCount) buffer = new long[visitedCount];
+        int count = 0;
+        for (int i = 0; i < visitedCount; i++) {
+            long thread = visited[i];
+            int op = program.op[pc(thread)];
+            if (op != SPLIT && op != SAVE && op != LINE_START && op != COUNT) buffer[count++] = thread;
+        }
+        Arrays.sort(buffer, 0, count);
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            long thread = buffer[i];
+            //only body of counter at pc - 1 has threads with repetitions
+            int pc = pc(thread);
+            if (count(thread) > 0 && kept > 0 && i + 1 < count && pc(buffer[kept - 1]) == pc
+                    && pc(buffer[i + 1]) == pc
+                    && count(buffer[i + 1]) - count(buffer[kept - 1]) <= program.alt[pc - 1] - program.arg[pc - 1] + 1) {
+                continue;
+            }
+            buffer[kept++] = thread;
+        }
+        return kept;
+    }
+
+    private int[] matchesAtEnd(long[] threads, boolean atStart) {
+        if (stack.length < 2 * threads.length + 2) stack = new long[2 * threads.length + 2];
+        int top = 0;
+        for (long thread : threads) {
+            stack[top++] = thread;
+        }
+        work.clear();
+        int count = 0;
+        while (top > 0) {
+            long thread = stack[--top];
+            int pc = pc(thread);
+            if (count(thread) == 0 && !work.add(pc)) continue;
+            if (top + 2 > stack.length) stack = Arrays.copyOf(stack, 2 * stack.length);
+            switch (program.op[pc]) {
+                case MATCH:
+                    ids[count++] = program.arg[pc];
+                    break;
+                case SPLIT:
+                    stack[top++] = thread(program.alt[pc], count(thread));
+                    stack[top++] = thread(program.next[pc], count(thread));
+                    break;
+                case LINE_START:
+                    if (atStart) stack[top++] = thread(program.next[pc], count(thread));
+                    break;
+                case SAVE:
+                case LINE_END:
+                    stack[top++] = thread(program.next[pc], count(thread));
+                    break;
+                case COUNT:
+                    if (count(thread) >= program.arg[pc]) stack[top++] = thread(program.next[pc], 0);
+                    break;
+            }
+        }
+        if (count == 0) return NO_IDS;
+        Arrays.sort(ids, 0, count);
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * Create key of state for first count threads of {@link #buffer}
+     */
+    private Key key(int count, boolean atStart) {
+        long[] threads = Arrays.copyOf(buffer, count);
+        //start of input matters only if line start can be reached at the end of input
+        return new Key(threads, atStart && lineStart && containsOperation(threads, LINE_END));
+    }
+
+    /**
+     * Find or create state
+     */
+    private int state(Key key) {
+        Integer existing = states.get(key);
+        if (existing != null) return existing;
+
+        long[] stateThreads = key.threads;
+        int state = stateCount++;
+        if (state == threads.length) {
+            int capacity = state * 2;
+            threads = Arrays.copyOf(threads, capacity);
+            accepts = Arrays.copyOf(accepts, capacity);
+            matches = Arrays.copyOf(matches, capacity);
+            matched = Arrays.copyOf(matched, capacity);
+            table = Arrays.copyOf(table, capacity * width);
+        }
+        threads[state] = stateThreads;
+        matches[state] = matchesAtEnd(stateThreads, key.atStart);
+        accepts[state] = matches[state].length > 0;
+        matched[state] = containsOperation(stateThreads, MATCH);
+        Arrays.fill(table, state * width, (state + 1) * width, UNKNOWN);
+        states.put(key, state);
+        memory += stateMemory(stateThreads.length) + matches[state].length * 4;
+        return state;
+    }
+
+    /**
+     * @return true if instruction of some thread has given operation code
+     */
+    private boolean containsOperation(long[] threads, int operation) {
+        for (long thread : threads) {
+            if (program.op[pc(thread)] == operation) return true;
+        }
+        return false;
+    }
+
+    private long stateMemory(int threads) {
+        return width * 4 + threads * 8 + STATE_OVERHEAD;
+    }
+
+    /**
+     * Key of DFA state in map of states
+     */
+    private static final class Key {
+        private final long[] threads;
+        private final boolean atStart;
+        private final int hash;
+
+        Key(long[] threads, boolean atStart) {
+            this.threads = threads;
+            this.atStart = atStart;
+            this.hash = 31 * Arrays.hashCode(threads) + (atStart ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key otherKey = (Key) other;
+            return atStart == otherKey.atStart && Arrays.equals(threads, otherKey.threads);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package nd.regex;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Literal prefixes extractor.
+ * Find set of literals such that every match of pattern starts with one of them, like {@code foo} and {@code bar}
+ * in {@code (foo|bar)\d+}, so search can skip input to their occurrences instead of running automaton
+ * at every position. Visitor extends every prefix with literal characters of node and returns true
+ * if node matches exactly these characters, so prefixes continue after it. Nodes with children
+ * are visited by {@link Task}s.
+ */
+final class LiteralPrefix implements ASTVisitor<Task<Boolean>> {
+
+    /** Alternatives with more literals than this are not expanded */
+    private static final int MAX_PREFIXES = 4096;
+    /** Longer prefixes are not extended, they are selective enough */
+    private static final int MAX_LENGTH = 256;
+
+    private Set<String> prefixes = Collections.singleton("");
+
+    /**
+     * @param ast root of AST
+     * @return literals which every match starts with one of, empty array if some match may start with anything
+     */
+    static String[] of(AST ast) {
+        LiteralPrefix visitor = new LiteralPrefix();
+        Task.run(ast, visitor);
+        if (visitor.prefixes.contains("")) return new String[0];
+        return visitor.prefixes.toArray(new String[visitor.prefixes.size()]);
+    }
+
+    @Override
+    public Task<Boolean> visit(SequenceNode sequence) {
+        return new Sequence(sequence.children(), true);
+    }
+
+    @Override
+    public Task<Boolean> visit(BoundedQuantifierNode quantifier) {
+        //prefixes are extended with term repeated mandatory number of times
+        return new Sequence(Collections.nCopies(quantifier.lowBound(), quantifier.term()),
+                quantifier.lowBound() == quantifier.highBound());
+    }
+
+    @Override
+    public Task<Boolean> visit(UnboundedQuantifierNode quantifier) {
+        return new Sequence(Collections.nCopies(quantifier.lowBound(), quantifier.term()), false);
+    }
+
+    @Override
+    public Task<Boolean> visit(CharacterClassNode charClass) {
+        return Task.done(false);
+    }
+
+    @Override
+    public Task<Boolean> visit(CharacterClassIntervalNode interval) {
+        return Task.done(false);
+    }
+
+    @Override
+    public Task<Boolean> visit(CharacterNode character) {
+        char c = character.token().text().charAt(0);
+        Set<String> extended = new LinkedHashSet<String>();
+        for (String prefix : prefixes) {
+            if (prefix.length() == MAX_LENGTH) return Task.done(false);
+            extended.add(prefix + c);
+        }
+        prefixes = extended;
+        return Task.done(true);
+    }
+
+    @Override
+    public Task<Boolean> visit(AlternativeNode alternative) {
+        return new Alternative(alternative.alternatives());
+    }
+
+    @Override
+    public Task<Boolean> visit(AnchorNode anchor) {
+        //line start consumes nothing, line end can not be followed by any character
+        return Task.done(anchor.token().type() == Token.Type.CARET);
+    }
+
+    /**
+     * Extend prefixes with children one by one while they are literal
+     */
+    private static final class Sequence extends Task<Boolean> {
+        private final List<AST> children;
+        private boolean literal;
+        private int index;
+
+        /**
+         * @param literal false if node is not literal even if all children are
+         */
+        Sequence(List<AST> children, boolean literal) {
+            this.children = children;
+            this.literal = literal;
+        }
+
+        @Override
+        AST next(Boolean child) {
+            if (child != null && !child) {
+                literal = false;
+                return null;
+            }
+            return index < children.size() ? children.get(index++) : null;
+        }
+
+        @Override
+        Boolean result() {
+            return literal;
+        }
+    }
+
+    /**
+     * Extend prefixes before alternative with every alternative and unite them
+     */
+    private final class Alternative extends Task<Boolean> {
+        private final List<List<AST>> alternatives;
+        private final Set<String> before = prefixes;
+        private final Set<String> union = new LinkedHashSet<String>();
+        private boolean literal = true;
+        private int current;
+        private int index;
+
+        Alternative(List<List<AST>> alternatives) {
+            this.alternatives = alternatives;
+        }
+
+        @Override
+        AST next(Boolean child) {
+            if (child != null && !child) {
+                literal = false;
+                index = alternatives.get(current).size();
+            }
+            while (index == alternatives.get(current).size()) {
+                union.addAll(prefixes);
+                if (union.size() > MAX_PREFIXES) {
+                    prefixes = before;
+                    literal = false;
+                    return null;
+                }
+                if (++current == alternatives.size()) {
+                    prefixes = union;
+                    return null;
+                }
+                prefixes = before;
+                index = 0;
+            }
+            return alternatives.get(current).get(index++);
+        }
+
+        @Override
+        Boolean result() {
+            return literal;
+        }
+    }
+}
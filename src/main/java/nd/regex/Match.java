@@ -0,0 +1,105 @@
+package nd.regex;
+
+import java.util.Arrays;
+
+/**
+ * Bounds of substring matched by pattern and of substrings matched by its capturing groups.
+ * Groups are numbered from 1 by their opening parenthesis, group 0 is the whole match.
+ * Match is immutable.
+ */
+public final class Match {
+
+    /** Start and end of the whole match, then of every group, -1 for groups which do not participate in match */
+    private final int[] slots;
+
+    Match(int start, int end) {
+        this(new int[] {start, end});
+    }
+
+    Match(int[] slots) {
+        this.slots = slots;
+    }
+
+    /**
+     * @return index of the first matched character
+     */
+    public int start() {
+        return slots[0];
+    }
+
+    /**
+     * @return index after the last matched character
+     */
+    public int end() {
+        return slots[1];
+    }
+
+    /**
+     * @return number of capturing groups in pattern
+     */
+    public int groupCount() {
+        return slots.length / 2 - 1;
+    }
+
+    /**
+     * @param group number of group
+     * @return index of the first character matched by group or -1 if group does not participate in match
+     * @throws IndexOutOfBoundsException if there is no group with such number
+     */
+    public int start(int group) {
+        return slots[2 * checkGroup(group)];
+    }
+
+    /**
+     * @param group number of group
+     * @return index after the last character matched by group or -1 if group does not participate in match
+     * @throws IndexOutOfBoundsException if there is no group with such number
+     */
+    public int end(int group) {
+        return slots[2 * checkGroup(group) + 1];
+    }
+
+    /**
+     * @param str string this match was found in
+     * @return matched substring
+     */
+    public String group(String str) {
+        return str.substring(start(), end());
+    }
+
+    /**
+     * @param str string this match was found in
+     * @param group number of group
+     * @return substring matched by group or null if group does not participate in match
+     * @throws IndexOutOfBoundsException if there is no group with such number
+     */
+    public String group(String str, int group) {
+        int start = start(group);
+        return start < 0 ? null : str.substring(start, end(group));
+    }
+
+    private int checkGroup(int group) {
+        if (group < 0 || group > groupCount()) throw new IndexOutOfBoundsException("No group " + group);
+        return group;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Match && Arrays.equals(slots, ((Match) other).slots);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(slots);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < slots.length; i += 2) {
+            if (i > 0) sb.append(' ');
+            sb.append('[').append(slots[i]).append(", ").append(slots[i + 1]).append(')');
+        }
+        return sb.toString();
+    }
+}
@@ -1,6 +1,7 @@
 package nd.regex;
 
-import static nd.regex.NFA.State;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Single entry point to regexp engine.
@@ -213,16 +214,109 @@ import static nd.regex.NFA.State;
  *
  * <a name="groups">
  * <h4> Groups and capturing </h4>
- * Groups are supported, but they are non-capturing. You can not reference to group with number or name.
- * In {@link java.util.regex.Pattern} non-capturing groups have syntax (?:X), but since capturing groups
- * are not supported, we use shorter capturing-group syntax for them - (X).
+ * Groups are capturing and numbered from 1 by their opening parenthesis, like in {@link java.util.regex.Pattern}.
+ * Bounds of groups are reported by {@link Match} returned from {@link Pattern#find(String)},
+ * {@link Pattern#findAll(String)} and {@link Pattern#match(String)}. Groups are found by the same linear time
+ * NFA emulation as matches, without backtracking. You can not reference to group with number or name.
+ *
+ * <h4> Caching </h4>
+ * {@link #matches(String, String)}, {@link #find(String, String)} and {@link #findAll(String, String)}
+ * keep compiled patterns in process-wide {@link PatternCache}.
+ * Its size is set with system property {@code nd.regex.cache.size} (256 by default, 0 disables caching,
+ * negative and malformed values are ignored).
  */
 public final class Matcher {
 
+    private static final int DEFAULT_CACHE_SIZE = 256;
+    private static final PatternCache cache = new PatternCache(cacheSize(Integer.getInteger("nd.regex.cache.size")));
+
     private Matcher() {}
 
     /**
-     * Check if string matches pattern
+     * Compile pattern.
+     * Compiled pattern is immutable and can be used to match many strings from many threads.
+     * @param pattern pattern to compile
+     * @return compiled pattern
+     * @throws LexerImpl.LexerException if there are errors while tokenize pattern
+     * @throws ParserImpl.ParserException if there are error in the syntax of pattern
+     */
+    public static Pattern compile(String pattern) {
+        return compile(pattern, 0);
+    }
+
+    /**
+     * Compile pattern and try to build complete minimal DFA for it.
+     * DFA gives the fastest matching, but its construction may take exponential time and memory,
+     * so it is built only if it has at most dfaStateLimit states. Otherwise pattern works as compiled
+     * with {@link #compile(String)}. Chosen engine is reported by {@link Pattern#engine()}.
+     * @param pattern pattern to compile
+     * @param dfaStateLimit maximum number of DFA states, 0 to never build DFA
+     * @return compiled pattern
+     * @throws LexerImpl.LexerException if there are errors while tokenize pattern
+     * @throws ParserImpl.ParserException if there are error in the syntax of pattern
+     */
+    public static Pattern compile(String pattern, int dfaStateLimit) {
+        if (pattern == null) throw new IllegalArgumentException("pattern = null");
+        if (dfaStateLimit < 0) throw new IllegalArgumentException("Negative DFA state limit " + dfaStateLimit);
+        Parser parser = new ParserImpl(new LexerImpl(pattern));
+        AST ast = parser.parse();
+        Program program = new NFABuilder().build(ast);
+        DFA dfa = dfaStateLimit > 0 ? DFA.build(program, dfaStateLimit) : null;
+        return new Pattern(pattern, program, dfa);
+    }
+
+    /**
+     * Compile several patterns to one automaton.
+     * String is matched against all of them in a single pass, see {@link RegexSet}.
+     * @param patterns patterns to compile
+     * @return compiled set of patterns
+     * @throws LexerImpl.LexerException if there are errors while tokenize some pattern
+     * @throws ParserImpl.ParserException if there are error in the syntax of some pattern
+     */
+    public static RegexSet compileSet(String... patterns) {
+        if (patterns == null || patterns.length == 0) throw new IllegalArgumentException("No patterns");
+        List<AST> asts = new ArrayList<AST>(patterns.length);
+        for (String pattern : patterns) {
+            if (pattern == null) throw new IllegalArgumentException("pattern = null");
+            asts.add(new ParserImpl(new LexerImpl(pattern)).parse());
+        }
+        return new RegexSet(patterns.clone(), new NFABuilder().build(asts));
+    }
+
+    /**
+     * @param property value of cache size property, null if it is absent or malformed
+     * @return size of process-wide cache, default one if property is absent or negative
+     */
+    static int cacheSize(Integer property) {
+        return property != null && property >= 0 ? property : DEFAULT_CACHE_SIZE;
+    }
+
+    /**
+     * @return process-wide cache used by static methods of this class
+     */
+    public static PatternCache cache() {
+        return cache;
+    }
+
+    /**
+     * Check if string matches pattern.
+     * Compiled pattern is taken from {@link #cache()}.
+     * @param input string to check
+     * @param pattern pattern to match
+     * @return true if string matches pattern, otherwise - otherwise
+     * @throws LexerImpl.LexerException if there are errors while tokenize pattern
+     * @throws ParserImpl.ParserException if there are error in the syntax of pattern
+     * @see Pattern#matches(CharSequence)
+     */
+    public static boolean matches(CharSequence input, String pattern) {
+        if (input == null || pattern == null) throw new IllegalArgumentException(String
+                .format("input = %s, pattern = %s", input, pattern));
+        return cache.get(pattern).matches(input);
+    }
+
+    /**
+     * Check if string matches pattern.
+     * Same as {@link #matches(CharSequence, String)}, kept for callers compiled against older versions.
      * @param str string to check
      * @param pattern pattern to match
      * @return true if string matches pattern, otherwise - otherwise
@@ -230,12 +324,35 @@ public final class Matcher {
      * @throws ParserImpl.ParserException if there are error in the syntax of pattern
      */
     public static boolean matches(String str, String pattern) {
+        return matches((CharSequence) str, pattern);
+    }
+
+    /**
+     * Find the first substring which matches pattern.
+     * Compiled pattern is taken from {@link #cache()}.
+     * @param str string to search in
+     * @param pattern pattern to find
+     * @return match or null if there is no match
+     * @see Pattern#find(String)
+     */
+    public static Match find(String str, String pattern) {
         if (str == null || pattern == null) throw new IllegalArgumentException(String
                 .format("str = %s, pattern = %s", str, pattern));
-        Parser parser = new ParserImpl(new LexerImpl(pattern));
-        AST ast = parser.parse();
-        State first = ast.visit(new NFABuilder());
-        return NFA.emulate(str, first);
+        return cache.get(pattern).find(str);
+    }
+
+    /**
+     * Find all non-overlapping substrings which match pattern.
+     * Compiled pattern is taken from {@link #cache()}.
+     * @param str string to search in
+     * @param pattern pattern to find
+     * @return list of matches, empty if there are no matches
+     * @see Pattern#findAll(String)
+     */
+    public static List<Match> findAll(String str, String pattern) {
+        if (str == null || pattern == null) throw new IllegalArgumentException(String
+                .format("str = %s, pattern = %s", str, pattern));
+        return cache.get(pattern).findAll(str);
     }
 
 }
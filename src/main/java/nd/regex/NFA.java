@@ -1,424 +1,388 @@
 package nd.regex;
 
-import java.util.*;
+import java.util.Arrays;
+
+import static nd.regex.Program.*;
 
 /**
  * Non-deterministic Finite Automaton (NFA).
- * NFA is just set of states properly linked with each other.
+ * NFA is compiled to {@link Program}, this class emulates it: all threads of the program
+ * are advanced through the input in lock step, so time is linear in length of input.
+ * Instructions which consume nothing are not walked for every character: thread which consumed character
+ * continues with precomputed {@link Closures} of the next instruction, and only instructions with
+ * condition are followed one by one.
+ * <p>
+ * Instance of this class holds preallocated work sets for one program and allocates nothing while matching,
+ * except capture slots of threads which pass capturing groups while searching and growth of work sets
+ * when counters hold more threads than ever before. Slots are copied on write:
+ * thread shares slots of the thread it was forked from until it saves position to some slot.
+ * It is not thread-safe, every thread should use its own instance.
  */
-class NFA {
+final class NFA {
+
+    private final Program program;
+    private final Closures closures;
+    private Threads current;
+    private Threads next;
+    /** Slots of thread which has not passed any group yet */
+    private final int[] noSlots;
+    private long[] stack;
+    /** Slots of threads in {@link #stack} */
+    private int[][] slotStack;
+
+    NFA(Program program) {
+        this.program = program;
+        this.closures = program.closures();
+        this.current = new Threads(program);
+        this.next = new Threads(program);
+        this.noSlots = new int[slotCount()];
+        Arrays.fill(noSlots, -1);
+        this.stack = new long[2 * program.size() + 1];
+        this.slotStack = new int[stack.length][];
+    }
 
     /**
-     * Emulate work of NFA from its first state
+     * @return length of array of capture slots filled by search: bounds of match, then bounds of every group
+     */
+    int slotCount() {
+        return 2 * program.groups + 2;
+    }
+
+    /**
+     * Emulate work of NFA from its first instruction
      * @param str string to work with
-     * @param firstState first state of NFA to emulate
      * @return true if NFA match string, otherwise false
      */
-    static boolean emulate(String str, State firstState) {
-        Set<State> current = new HashSet<State>();
-        current.add(firstState);
-        for (int i = 0; i < str.length(); i++) {
-            char prevChar = i == 0 ? 0 : str.charAt(i - 1);
-            char nextChar = i + 1 >= str.length() ? 0 : str.charAt(i + 1);
-            Character c = str.charAt(i);
-            Set<State> next = new HashSet<State>();
-            for (State state : current) {
-                next.addAll(state.step(prevChar, c, nextChar));
-            }
-            current = next;
-        }
-        for (State state : current) {
-            if (state.isFinal()) return true;
-        }
-        return false;
+    boolean emulate(String str) {
+        return emulate(str, 0, str.length());
     }
 
     /**
-     * Base State class, defines interface for other states.
+     * Emulate work of NFA over region of input, anchors match at bounds of region
+     * @param input input
+     * @param start start of region
+     * @param end end of region, exclusive
+     * @return true if NFA match region, otherwise false
      */
-    abstract static class State {
-
-        static private int seq = 0;
-        private boolean isFinal;
-        protected final int id;
-
-        State() {
-            id = seq++;
-        }
-
-        /**
-         * Step through state
-         * @param prev previous character
-         * @param cur current character
-         * @param next next character
-         * @return list of next states to match
-         */
-        abstract List<State> step(Character prev, Character cur, Character next);
-
-        /**
-         * Check if this state matches previous, current and next characters
-         * @param prev previous character
-         * @param cur current character
-         * @param next next character
-         * @return true if matches, false otherwise
-         */
-        abstract boolean match(Character prev, Character cur, Character next);
-
-        /**
-         * Link state with next state
-         * @param s next state
-         */
-        abstract void patch(State s);
-
-        /**
-         * Check if this state is final
-         * @return true if state is final
-         */
-        boolean isFinal() {
-            return isFinal;
-        }
-
-        /**
-         * Make this state final flag
-         * @param aFinal final flag
-         */
-        void setFinal(boolean aFinal) {
-            isFinal = aFinal;
-        }
-
-        @Override
-        public final boolean equals(Object other) {
-            if (!(other instanceof State)) return false;
-            return id == ((State) other).id;
-        }
-        @Override
-        public final int hashCode() {
-            return id;
+    boolean emulate(CharSequence input, int start, int end) {
+        run(input, start, end);
+        for (int j = 0; j < current.size; j++) {
+            if (program.op[pc(current.threads[j])] == MATCH) return true;
         }
+        return false;
     }
 
-
     /**
-     * State for single character
+     * Emulate work of NFA compiled from several patterns
+     * @param str string to work with
+     * @return numbers of patterns which match string in ascending order
      */
-    static class CharacterState extends State {
-        private final Character c;
-        private State output;
-
-        CharacterState(Character c) {
-            this.c = c;
-        }
-
-        @Override
-        List<State> step(Character prev, Character cur, Character next) {
-            if (output != null) {
-                return match(prev, cur, next) ? Collections.singletonList(output) : Collections.<State>emptyList();
-            } else {
-                return Collections.emptyList();
-            }
-        }
-
-        @Override
-        boolean match(Character prev, Character cur, Character next) {
-            return this.c.equals(cur);
-        }
-
-        @Override
-        void patch(State s) {
-            if (output == s) return;
-            if (output == null) {
-                output = s;
-            } else {
-                output.patch(s);
-            }
-        }
-
-        @Override
-        public String toString() {
-            return "(s" + id +")-" + c.toString() + "->" + (output != null ? output.toString() : "");
-        }
+    int[] emulateAll(String str) {
+        return emulateAll(str, 0, str.length());
     }
 
     /**
-     * State for any character (.)
+     * Emulate work of NFA compiled from several patterns over region of input
+     * @param input input
+     * @param start start of region
+     * @param end end of region, exclusive
+     * @return numbers of patterns which match region in ascending order
      */
-    static class AnyCharacterState extends State {
-        private State output;
-
-        AnyCharacterState() {
-        }
-
-        @Override
-        List<State> step(Character prev, Character cur, Character next) {
-            if (output != null) {
-                return Collections.singletonList(output);
-            } else {
-                return Collections.emptyList();
-            }
-        }
-
-        @Override
-        boolean match(Character prev, Character cur, Character next) {
-            return true;
-        }
-
-        @Override
-        void patch(State s) {
-            if (output == s) return;
-            if (output == null) {
-                output = s;
-            } else {
-                output.patch(s);
-            }
-        }
-
-        @Override
-        public String toString() {
-            return "(s" + id +")-any->" + (output != null ? output.toString() : "");
-        }
+    int[] emulateAll(CharSequence input, int start, int end) {
+        run(input, start, end);
+        int[] ids = new int[current.size];
+        int count = 0;
+        for (int j = 0; j < current.size; j++) {
+            int pc = pc(current.threads[j]);
+            if (program.op[pc] == MATCH) ids[count++] = program.arg[pc];
+        }
+        ids = Arrays.copyOf(ids, count);
+        Arrays.sort(ids);
+        return ids;
     }
 
     /**
-     * State for interval in character class
+     * Advance threads through the whole region, threads after the last character are left in {@link #current}
      */
-    static class CharacterIntervalState extends State {
-        private final char lowBound;
-        private final char highBound;
-        private State output;
-
-        CharacterIntervalState(char lowBound, char highBound) {
-            this.lowBound = lowBound;
-            this.highBound = highBound;
-        }
-
-        @Override
-        List<State> step(Character prev, Character cur, Character next) {
-            if (output != null) {
-                return match(prev, cur, next) ? Collections.singletonList(output) : Collections.<State>emptyList();
-            } else {
-                return Collections.emptyList();
-            }
-        }
-
-        @Override
-        boolean match(Character prev, Character cur, Character next) {
-            return cur >= lowBound && cur <= highBound;
-        }
-
-        @Override
-        void patch(State s) {
-            if (output == s) return;
-            if (output == null) {
-                output = s;
-            } else {
-                output.patch(s);
+    private void run(CharSequence input, int start, int end) {
+        current.clear();
+        addThread(current, thread(program.start, 0), 0, null, 0, BOUNDARY, codeUnit(input, start, start, end));
+        for (int i = start; i < end && !current.isEmpty(); i++) {
+            char c = input.charAt(i);
+            int following = codeUnit(input, i + 1, start, end);
+            next.clear();
+            for (int j = 0; j < current.size; j++) {
+                long thread = current.threads[j];
+                int pc = pc(thread);
+                if (program.accepts(pc, c)) {
+                    addThread(next, thread(program.next[pc], count(thread)), 0, null, 0, c, following);
+                }
             }
-        }
-
-        @Override
-        public String toString() {
-            return "(s" + id +")-" + "(" + Character.toString(lowBound) + "-" + Character.toString(highBound) + ")" + "->"
-                    + (output != null ? output.toString() : "");
+            Threads tmp = current;
+            current = next;
+            next = tmp;
         }
     }
 
     /**
-     * Used to match one of two alternatives
+     * Find leftmost match in string. New thread is started at every position with lower priority
+     * than all running threads, so of matches with the same start the one preferred by
+     * {@link java.util.regex.Pattern} is chosen: alternatives are tried from left to right and quantifiers are greedy.
+     * Every thread carries its capture slots, so groups get the same bounds as in java.util.regex too.
+     * Time is linear in length of input. While no thread is running, input is skipped
+     * to the next occurrence of {@link Program#prefixes}.
+     * @param str string to search in
+     * @param from position to start search from
+     * @param slots array of {@link #slotCount()} elements to store bounds of match and groups to,
+     *              -1 for groups which do not participate in match
+     * @return true if match is found
      */
-    static class OrState extends State {
-        private final State s1;
-        private final State s2;
-
-        OrState(State s1, State s2) {
-            this.s1 = s1;
-            this.s2 = s2;
-        }
-
-        @Override
-        List<State> step(Character prev, Character cur, Character next) {
-            List<State> result = new ArrayList<State>();
-            result.addAll(s1.step(prev, cur, next));
-            result.addAll(s2.step(prev, cur, next));
-            return result;
-        }
-
-        @Override
-        boolean match(Character prev, Character cur, Character next) {
-            return s1.match(prev, cur, next) || s2.match(prev, cur, next);
-        }
-
-        @Override
-        void patch(State s) {
-            s1.patch(s);
-            s2.patch(s);
-        }
-
-        @Override
-        public String toString() {
-            return String.format("(OR%s %s %s)", id, s1, s2);
-        }
-
-        @Override
-        boolean isFinal() {
-            return s1.isFinal() || s2.isFinal();
-        }
-
-        @Override
-        void setFinal(boolean aFinal) {
-            s1.setFinal(aFinal);
-            s2.setFinal(aFinal);
-        }
+    boolean search(String str, int from, int[] slots) {
+        return search(str, from, false, slots);
     }
 
     /**
-     * Wrapper over other state, matches if other state doesn't match and vise versa
+     * Match the whole string and find bounds of groups. Of all ways to match string
+     * the one preferred by {@link java.util.regex.Matcher#matches()} is chosen.
+     * @param str string to match
+     * @param slots array of {@link #slotCount()} elements to store bounds of match and groups to
+     * @return true if string matches
      */
-    static class NotState extends State {
-        private final State s;
-        private State output;
-
-        NotState(State s) {
-            this.s = s;
-        }
+    boolean capture(String str, int[] slots) {
+        return search(str, 0, true, slots);
+    }
 
-        @Override
-        List<State> step(Character prev, Character cur, Character next) {
-            if (output != null && match(prev, cur, next)) {
-                return Collections.singletonList(output);
-            } else {
-                return Collections.emptyList();
+    /**
+     * @param whole true if match must start at from and end at the end of string
+     */
+    private boolean search(String str, int from, boolean whole, int[] slots) {
+        boolean found = false;
+        current.clear();
+        AhoCorasick prefixes = whole ? null : program.prefixes;
+        int length = str.length();
+        for (int i = from; ; i++) {
+            if (!found && current.isEmpty() && prefixes != null) {
+                i = prefixes.indexIn(str, i);
+                if (i < 0) break;
             }
-        }
-
-        @Override
-        boolean match(Character prev, Character cur, Character next) {
-            return !s.match(prev, cur, next);
-        }
-
-        @Override
-        void patch(State s) {
-            if (output == s) return;
-            if (output == null) {
-                output = s;
-            } else {
-                output.patch(s);
+            if (!found && (!whole || i == from)) {
+                addThread(current, thread(program.start, 0), i, noSlots, i,
+                        codeUnit(str, i - 1, 0, length), codeUnit(str, i, 0, length));
+            }
+            if (current.isEmpty()) break;
+            boolean atEnd = i == length;
+            char c = atEnd ? 0 : str.charAt(i);
+            int following = codeUnit(str, i + 1, 0, length);
+            next.clear();
+            for (int j = 0; j < current.size; j++) {
+                long thread = current.threads[j];
+                int pc = pc(thread);
+                if (program.op[pc] == MATCH) {
+                    if (whole && !atEnd) continue;
+                    //threads with lower priority can not give preferred match
+                    System.arraycopy(current.slots[j], 2, slots, 2, slots.length - 2);
+                    slots[0] = current.starts[j];
+                    slots[1] = i;
+                    found = true;
+                    break;
+                }
+                if (!atEnd && program.accepts(pc, c)) {
+                    addThread(next, thread(program.next[pc], count(thread)), current.starts[j], current.slots[j],
+                            i + 1, c, following);
+                }
             }
+            if (atEnd) break;
+            Threads tmp = current;
+            current = next;
+            next = tmp;
         }
+        return found;
+    }
 
-        @Override
-        public String toString() {
-            return String.format("(NOT%d %s %s)", id, s, output != null ? output : "");
-        }
+    private static int codeUnit(CharSequence input, int i, int start, int end) {
+        return i >= start && i < end ? input.charAt(i) : BOUNDARY;
     }
 
     /**
-     * State that always matches
+     * Add thread and all threads reached from it by instructions which consume nothing
+     * @param threads list to add threads to
+     * @param thread thread to start from
+     * @param start start position of thread
+     * @param slots capture slots of thread or null if they are not tracked, array is shared and never modified
+     * @param position current position in input
+     * @param prev previous character or {@link Program#BOUNDARY} at the start of input
+     * @param following next character or {@link Program#BOUNDARY} at the end of input
      */
-    static class EmptyState extends State {
-        protected State output;
-
-        @Override
-        List<State> step(Character prev, Character cur, Character next) {
-            if (output != null && match(prev, cur, next)) {
-                return output.step(prev, cur, next);
-            } else {
-                return Collections.emptyList();
-            }
-        }
-
-        @Override
-        void patch(State s) {
-            if (output == s) return;
-            if (output == null) {
-                output = s;
-            } else {
-                output.patch(s);
+    private void addThread(Threads threads, long thread, int start, int[] slots, int position, int prev,
+                           int following) {
+        int pc = pc(thread);
+        if (count(thread) != 0 || !closures.computed(pc)) {
+            follow(threads, thread, start, slots, position, prev, following);
+            return;
+        }
+        for (int entry = closures.from(pc); entry < closures.to(pc); entry++) {
+            int target = closures.target(entry);
+            int[] targetSlots = save(slots, closures.saves(entry), position);
+            switch (program.op[target]) {
+                case LINE_START:
+                case LINE_END:
+                case COUNT:
+                    follow(threads, thread(target, 0), start, targetSlots, position, prev, following);
+                    break;
+                default:
+                    threads.add(thread(target, 0), start, targetSlots);
             }
         }
-
-        @Override
-        boolean match(Character prev, Character cur, Character next) {
-            return true;
-        }
-
-        @Override
-        public String toString() {
-            return String.format("(s%d)-any-> %s)", id, output);
-        }
-
-        @Override
-        void setFinal(boolean aFinal) {
-            super.setFinal(aFinal);
-        }
-
-        @Override
-        boolean isFinal() {
-            boolean finalOutput = (output != null) ? output.isFinal() : false;
-            return super.isFinal() || finalOutput;
-        }
     }
 
     /**
-     * State for start of the line. Matches only if previous character is 0
+     * Save position to slots, slots are copied if some of them changes
      */
-    static class LineStartState extends EmptyState {
-        @Override
-        boolean match(Character prev, Character cur, Character next) {
-            return (prev == 0) && output.match(prev, cur, next);
-        }
-
-        @Override
-        public String toString() {
-            return String.format("(s%d)^-> %s)", id, output);
-        }
+    private static int[] save(int[] slots, int[] saves, int position) {
+        if (slots == null || saves == null) return slots;
+        int[] result = slots;
+        for (int slot : saves) {
+            if (result[slot] == position) continue;
+            if (result == slots) result = slots.clone();
+            result[slot] = position;
+        }
+        return result;
     }
 
     /**
-     * State for line end. Never matches, so any pattern with $ in the middle always fails.
+     * Follow all instructions which consume nothing one by one.
+     * Every visited thread is added to the list in priority order; threads at instructions which consume nothing
+     * stay in the list only to stop visiting them again.
+     * @param threads list to add threads to
+     * @param thread thread to start from
+     * @param start start position of thread
+     * @param slots capture slots of thread or null if they are not tracked, array is shared and never modified
+     * @param position current position in input
+     * @param prev previous character or {@link Program#BOUNDARY} at the start of input
+     * @param following next character or {@link Program#BOUNDARY} at the end of input
      */
-    static class LineEndState extends EmptyState {
-        @Override
-        boolean match(Character prev, Character cur, Character next) {
-            return false;
-        }
-
-        @Override
-        public String toString() {
-            return String.format("(s%d)->$ %s)", id, output);
+    private void follow(Threads threads, long thread, int start, int[] slots, int position, int prev,
+                        int following) {
+        int top = 0;
+        stack[top] = thread;
+        slotStack[top++] = slots;
+        while (top > 0) {
+            thread = stack[--top];
+            slots = slotStack[top];
+            if (!threads.add(thread, start, slots)) continue;
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+                slotStack = Arrays.copyOf(slotStack, stack.length);
+            }
+            int pc = pc(thread);
+            int count = count(thread);
+            switch (program.op[pc]) {
+                case SPLIT:
+                    stack[top] = thread(program.alt[pc], count);
+                    slotStack[top++] = slots;
+                    stack[top] = thread(program.next[pc], count);
+                    slotStack[top++] = slots;
+                    break;
+                case SAVE:
+                    if (slots != null && slots[program.arg[pc]] != position) {
+                        slots = slots.clone();
+                        slots[program.arg[pc]] = position;
+                    }
+                    stack[top] = thread(program.next[pc], count);
+                    slotStack[top++] = slots;
+                    break;
+                case LINE_START:
+                    if (prev == BOUNDARY) {
+                        stack[top] = thread(program.next[pc], count);
+                        slotStack[top++] = slots;
+                    }
+                    break;
+                case LINE_END:
+                    if (following == BOUNDARY) {
+                        stack[top] = thread(program.next[pc], count);
+                        slotStack[top++] = slots;
+                    }
+                    break;
+                case COUNT:
+                    if (count >= program.arg[pc]) {
+                        stack[top] = thread(program.next[pc], 0);
+                        slotStack[top++] = slots;
+                    }
+                    if (count < program.alt[pc]) {
+                        stack[top] = thread(pc + 1, count + 1);
+                        slotStack[top++] = slots;
+                    }
+                    break;
+            }
         }
     }
 
     /**
-     * Wrapper over other state, protects wrapped state from patching with itself
+     * Threads in priority order with their start positions and capture slots.
+     * Thread outside of counters is added once for every instruction. Threads inside of counters
+     * are collapsed at their counter: thread which reaches it with at least minimal number of repetitions
+     * is dropped if thread with higher priority has reached it with not more repetitions. Such thread
+     * leaves counter at every position the dropped one could and is preferred there, so of threads with enough
+     * repetitions only ones with fewer repetitions than all preferred threads are kept. Threads with fewer
+     * repetitions than minimum are distinct by their counts, so counter holds at most minimum + 1 threads
+     * when threads with fewer repetitions have higher priority, as in {@code .*a{1,1000}b}.
      */
-    static class Unpatchable extends State {
-        private State s;
-        Unpatchable(State s) {
-            this.s = s;
-        }
-        @Override
-        List<State> step(Character prev, Character cur, Character next) {
-            return s.step(prev, cur, next);
-        }
-        @Override
-        void patch(State s) {
-            //ignore
-        }
-        @Override
-        boolean match(Character prev, Character cur, Character next) {
-            return s.match(prev, cur, next);
+    private static final class Threads {
+
+        private final Program program;
+        /** Instructions of threads outside of counters */
+        private final SparseSet instructions;
+        /** Counters reached with enough repetitions to leave them */
+        private final SparseSet counters;
+        /** Least number of repetitions counter is reached with, for counters in {@link #counters} */
+        private final int[] least;
+        private long[] threads;
+        private int[] starts;
+        private int[][] slots;
+        private int size;
+
+        Threads(Program program) {
+            int capacity = program.size();
+            this.program = program;
+            instructions = new SparseSet(capacity);
+            counters = new SparseSet(capacity);
+            least = new int[capacity];
+            threads = new long[capacity];
+            starts = new int[capacity];
+            slots = new int[capacity][];
         }
-        @Override
-        public String toString() {
-            return s.toString();
+
+        /**
+         * @return true if thread is added, false if it is already in list
+         */
+        boolean add(long thread, int start, int[] threadSlots) {
+            int pc = pc(thread);
+            int count = count(thread);
+            if (count == 0 && !instructions.add(pc)) return false;
+            if (program.op[pc] == COUNT && count >= program.arg[pc]) {
+                if (!counters.add(pc) && least[pc] <= count) return false;
+                least[pc] = count;
+            }
+            if (size == threads.length) {
+                int capacity = 2 * size + 1;
+                threads = Arrays.copyOf(threads, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                slots = Arrays.copyOf(slots, capacity);
+            }
+            threads[size] = thread;
+            starts[size] = start;
+            slots[size++] = threadSlots;
+            return true;
         }
-        @Override
-        boolean isFinal() {
-            return s.isFinal();
+
+        boolean isEmpty() {
+            return size == 0;
         }
-        @Override
-        void setFinal(boolean aFinal) {
-            s.setFinal(aFinal);
+
+        void clear() {
+            instructions.clear();
+            counters.clear();
+            size = 0;
         }
     }
 }
@@ -1,148 +1,470 @@
 package nd.regex;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-import static nd.regex.NFA.*;
+import static nd.regex.Program.*;
 
 /**
  * NFA builder.
- * Build NFA from AST.
+ * Build {@link Program} from AST. Every node is compiled to fragment of program: its first instruction
+ * and list of dangling exits which are patched to the next instruction when it becomes known.
+ * The list of dangling exits is threaded through unpatched next/alt slots themselves,
+ * so lists take no memory besides instructions. Nodes with children are compiled by {@link Task}s,
+ * so deeply nested groups do not overflow call stack. Builder is not reusable.
  */
-final class NFABuilder implements ASTVisitor<State> {
+final class NFABuilder implements ASTVisitor<Task<NFABuilder.Fragment>> {
 
-    @Override
-    public State visit(SequenceNode sequence) {
-        State first = null;
-        for (Iterator<AST> iter = sequence.children().iterator(); iter.hasNext();) {
-            State childState = iter.next().visit(this);
-            if (first != null) {
-                first.patch(childState);
-            } else {
-                first = childState;
-            }
-            if (!iter.hasNext() && sequence.isRoot()) {
-                State f = new EmptyState();
-                f.setFinal(true);
-                childState.patch(f);
-            }
+    /** End of dangling exits list */
+    private static final int NIL = -1;
+
+    private int[] op = new int[16];
+    private int[] arg = new int[16];
+    private int[] next = new int[16];
+    private int[] alt = new int[16];
+    private int size = 0;
+    private int groups = 0;
+    private final List<CharClass> classes = new ArrayList<CharClass>();
+    private final Map<CharClass, Integer> classIndex = new HashMap<CharClass, Integer>();
+
+    /**
+     * Build program from AST
+     * @param ast root of AST
+     * @return program
+     */
+    Program build(AST ast) {
+        groups = groupCount(ast);
+        return program(pattern(ast, 0), LiteralPrefix.of(ast), RequiredLiterals.of(ast));
+    }
+
+    /**
+     * Build one program for several patterns. Its {@link Program#MATCH} instructions have number
+     * of pattern as operand, and all patterns are tried at once from the start.
+     * @param asts roots of AST of patterns
+     * @return program
+     */
+    Program build(List<AST> asts) {
+        int[] starts = new int[asts.size()];
+        for (int id = 0; id < starts.length; id++) {
+            groups = Math.max(groups, groupCount(asts.get(id)));
+            starts[id] = pattern(asts.get(id), id);
         }
-        //empty pattern always match
-        if (first == null) {
-            first = new EmptyState();
-            first.setFinal(true);
+        int start = starts[starts.length - 1];
+        for (int id = starts.length - 2; id >= 0; id--) {
+            int split = emit(SPLIT, 0);
+            next[split] = starts[id];
+            alt[split] = start;
+            start = split;
         }
-        return first;
+        return program(start, new String[0], new String[0]);
+    }
+
+    /**
+     * Compile pattern with match instruction
+     * @return first instruction of pattern
+     */
+    private int pattern(AST ast, int id) {
+        Fragment f = Task.run(ast, this);
+        int match = emit(MATCH, id);
+        patch(f.out, match);
+        return f.isEmpty() ? match : f.start;
+    }
+
+    private Program program(int start, String[] prefixes, String[] required) {
+        return new Program(Arrays.copyOf(op, size), Arrays.copyOf(arg, size), Arrays.copyOf(next, size),
+                Arrays.copyOf(alt, size), classes.toArray(new CharClass[classes.size()]), start, groups,
+                prefixes, required);
+    }
+
+    private static int groupCount(AST ast) {
+        return ast instanceof SequenceNode ? ((SequenceNode) ast).groupCount() : 0;
     }
 
     @Override
-    public State visit(AlternativeNode alternative) {
-        State first = null;
-        for (AST child : alternative.getFirstAlternative()) {
-            State childState = child.visit(this);
-            if (first != null) {
-                first.patch(childState);
-            } else {
-                first = childState;
-            }
+    public Task<Fragment> visit(SequenceNode sequence) {
+        return new Sequence(sequence.children(), sequence.group());
+    }
+
+    @Override
+    public Task<Fragment> visit(AlternativeNode alternative) {
+        return new Alternative(alternative.alternatives());
+    }
+
+    @Override
+    public Task<Fragment> visit(BoundedQuantifierNode quantifier) {
+        if (quantifier.highBound() > 1 && isCharacter(quantifier.term())) {
+            return Task.done(counter(quantifier.term(), quantifier.lowBound(), quantifier.highBound()));
         }
-        if (first == null) first = new EmptyState();
-        State second = null;
-        for (AST child : alternative.getSecondAlternative()) {
-            State childState = child.visit(this);
-            if (second != null) {
-                second.patch(childState);
-            } else {
-                second = childState;
-            }
+        return new BoundedRepetition(quantifier);
+    }
+
+    @Override
+    public Task<Fragment> visit(UnboundedQuantifierNode quantifier) {
+        int times = quantifier.lowBound();
+        if (times > 1 && isCharacter(quantifier.term())) {
+            return new UnboundedRepetition(quantifier.term(), counter(quantifier.term(), times, times), 0);
         }
-        if (second == null) second = new EmptyState();
-        return new OrState(first, second);
+        return new UnboundedRepetition(quantifier.term(), Fragment.EMPTY, times);
     }
 
     @Override
-    public State visit(BoundedQuantifierNode quantifier) {
-        State first = null;
-        for (int i = 0; i < quantifier.lowBound(); i++) {
-            State s = quantifier.term().visit(this);
-            if (first == null) {
-                first = s;
-            } else {
-                first.patch(s);
-            }
+    public Task<Fragment> visit(CharacterClassNode charClass) {
+        if (charClass.token().type() == Token.Type.CLASS_ANY_CHARACTER) {
+            return Task.done(single(ANY, 0));
         }
-        for (int i = quantifier.lowBound(); i < quantifier.highBound(); i++) {
-            if (first == null) {
-                first = new OrState(quantifier.term().visit(this), new EmptyState());
-            } else {
-                first.patch(new OrState(quantifier.term().visit(this), new EmptyState()));
-            }
+        if (charClass.children().isEmpty()) {
+            return Task.done(Fragment.EMPTY);
         }
-        return first;
+        return Task.done(single(CLASS, charClass(charClass)));
     }
 
     @Override
-    public State visit(UnboundedQuantifierNode quantifier) {
-        State first = null;
-        for (int i = 0; i < quantifier.lowBound(); i++) {
-            State s = quantifier.term().visit(this);
-            if (first == null) {
-                first = s;
-            } else {
-                first.patch(s);
-            }
+    public Task<Fragment> visit(CharacterClassIntervalNode interval) {
+        return Task.done(single(CLASS, charClass(interval)));
+    }
+
+    @Override
+    public Task<Fragment> visit(CharacterNode character) {
+        return Task.done(single(CHAR, character.token().text().charAt(0)));
+    }
+
+    @Override
+    public Task<Fragment> visit(AnchorNode anchor) {
+        switch (anchor.token().type()) {
+            case CARET:  return Task.done(single(LINE_START, 0));
+            case DOLLAR: return Task.done(single(LINE_END, 0));
+            default: throw new Error("Unexpected token");
         }
+    }
+
+    /**
+     * Compile repetition of one character to counter, so program size does not depend on bounds
+     */
+    private Fragment counter(AST term, int min, int max) {
+        int counter = emit(COUNT, min);
+        alt[counter] = max;
+        next[counter] = NIL;
+        //term is the next instruction and loops back to counter
+        patch(Task.run(term, this).out, counter);
+        return new Fragment(counter, slot(counter, false));
+    }
+
+    /**
+     * @return true if term is compiled to one instruction which consumes one character
+     */
+    private static boolean isCharacter(AST term) {
+        if (term instanceof CharacterNode) return true;
+        if (!(term instanceof CharacterClassNode)) return false;
+        return term.token().type() == Token.Type.CLASS_ANY_CHARACTER || !term.children().isEmpty();
+    }
+
+    private Fragment concat(Fragment first, Fragment second) {
+        if (first.isEmpty()) return second;
+        if (second.isEmpty()) return first;
+        patch(first.out, second.start);
+        return new Fragment(first.start, second.out);
+    }
 
-        State last = quantifier.term().visit(this);
-        State or = new OrState(last, new EmptyState());
-        last.patch(new Unpatchable(or));
-        if (first == null) {
-            first = or;
+    private Fragment alternative(Fragment first, Fragment second) {
+        int split = emit(SPLIT, 0);
+        int exits = NIL;
+        if (first.isEmpty()) {
+            next[split] = NIL;
+            exits = slot(split, false);
         } else {
-            first.patch(or);
+            next[split] = first.start;
+            exits = first.out;
         }
-        return first;
+        if (second.isEmpty()) {
+            alt[split] = NIL;
+            exits = append(slot(split, true), exits);
+        } else {
+            alt[split] = second.start;
+            exits = append(exits, second.out);
+        }
+        return new Fragment(split, exits);
     }
 
-    @Override
-    public State visit(CharacterClassNode charClass) {
-        State charClassState = null;
-        if (charClass.token().type() == Token.Type.CLASS_ANY_CHARACTER) {
-            charClassState = new AnyCharacterState();
+    private Fragment single(int operation, int operand) {
+        int pc = emit(operation, operand);
+        next[pc] = NIL;
+        return new Fragment(pc, slot(pc, false));
+    }
+
+    private int emit(int operation, int operand) {
+        if (size == op.length) {
+            int capacity = size * 2;
+            op = Arrays.copyOf(op, capacity);
+            arg = Arrays.copyOf(arg, capacity);
+            next = Arrays.copyOf(next, capacity);
+            alt = Arrays.copyOf(alt, capacity);
+        }
+        op[size] = operation;
+        arg[size] = operand;
+        next[size] = 0;
+        alt[size] = 0;
+        return size++;
+    }
+
+    /*
+     * Dangling exit is encoded as pc * 2 for next slot of instruction pc and pc * 2 + 1 for its alt slot.
+     * Unpatched slot contains next dangling exit of the same list or NIL.
+     */
+
+    private static int slot(int pc, boolean alternative) {
+        return pc * 2 + (alternative ? 1 : 0);
+    }
+
+    private int follow(int slot) {
+        return (slot & 1) == 0 ? next[slot >> 1] : alt[slot >> 1];
+    }
+
+    private void set(int slot, int value) {
+        if ((slot & 1) == 0) {
+            next[slot >> 1] = value;
         } else {
+            alt[slot >> 1] = value;
+        }
+    }
+
+    private void patch(int exits, int target) {
+        while (exits != NIL) {
+            int following = follow(exits);
+            set(exits, target);
+            exits = following;
+        }
+    }
+
+    private int append(int first, int second) {
+        if (first == NIL) return second;
+        int last = first;
+        while (follow(last) != NIL) {
+            last = follow(last);
+        }
+        set(last, second);
+        return first;
+    }
+
+    /**
+     * Compile character class, equal classes share one index in program
+     */
+    private int charClass(AST node) {
+        CharClass charClass = compileClass(node);
+        Integer index = classIndex.get(charClass);
+        if (index == null) {
+            index = classes.size();
+            classes.add(charClass);
+            classIndex.put(charClass, index);
+        }
+        return index;
+    }
+
+    private static CharClass compileClass(AST node) {
+        if (node instanceof CharacterNode) {
+            char c = node.token().text().charAt(0);
+            return CharClass.of(c, c);
+        } else if (node instanceof CharacterClassIntervalNode) {
+            CharacterClassIntervalNode interval = (CharacterClassIntervalNode) node;
+            char low = interval.lowBound().token().text().charAt(0);
+            char high = interval.highBound().token().text().charAt(0);
+            return CharClass.of(low, high);
+        } else if (node instanceof CharacterClassNode) {
+            CharacterClassNode charClass = (CharacterClassNode) node;
+            CharClass predefined = CharClass.predefined(charClass.token().type());
+            if (predefined != null) return predefined;
+            //intervals of all members are normalized at once, union of members one by one is quadratic
+            int[] bounds = new int[2 * charClass.children().size()];
+            int n = 0;
             for (AST child : charClass.children()) {
-                if (charClassState == null) {
-                    charClassState = child.visit(this);
-                } else {
-                    charClassState = new OrState(charClassState, child.visit(this));
+                int[] ranges = compileClass(child).ranges();
+                if (n + ranges.length > bounds.length) bounds = Arrays.copyOf(bounds, 2 * (n + ranges.length));
+                System.arraycopy(ranges, 0, bounds, n, ranges.length);
+                n += ranges.length;
+            }
+            CharClass result = CharClass.of(Arrays.copyOf(bounds, n));
+            return charClass.exclusive() ? result.complement() : result;
+        } else {
+            throw new Error("Unexpected node in character class " + node.token());
+        }
+    }
+
+    /**
+     * Compile children in order and concatenate them, capturing group saves its bounds around them
+     */
+    private final class Sequence extends Task<Fragment> {
+        private final List<AST> children;
+        private final int group;
+        private Fragment f;
+        private int index;
+
+        Sequence(List<AST> children, int group) {
+            this.children = children;
+            this.group = group;
+            this.f = group == 0 ? Fragment.EMPTY : single(SAVE, 2 * group);
+        }
+
+        @Override
+        AST next(Fragment child) {
+            if (child != null) f = concat(f, child);
+            if (index < children.size()) return children.get(index++);
+            if (group != 0) f = concat(f, single(SAVE, 2 * group + 1));
+            return null;
+        }
+
+        @Override
+        Fragment result() {
+            return f;
+        }
+    }
+
+    /**
+     * Compile alternatives one by one, then join them with splits from the last one,
+     * so exits of each alternative are walked once
+     */
+    private final class Alternative extends Task<Fragment> {
+        private final List<List<AST>> alternatives;
+        private final Fragment[] fragments;
+        private Fragment f = Fragment.EMPTY;
+        private int current;
+        private int index;
+
+        Alternative(List<List<AST>> alternatives) {
+            this.alternatives = alternatives;
+            this.fragments = new Fragment[alternatives.size()];
+        }
+
+        @Override
+        AST next(Fragment child) {
+            if (child != null) f = concat(f, child);
+            while (index == alternatives.get(current).size()) {
+                fragments[current++] = f;
+                f = Fragment.EMPTY;
+                index = 0;
+                if (current == fragments.length) {
+                    f = fragments[fragments.length - 1];
+                    for (int i = fragments.length - 2; i >= 0; i--) {
+                        f = alternative(fragments[i], f);
+                    }
+                    return null;
                 }
             }
+            return alternatives.get(current).get(index++);
         }
-        if (charClassState == null) {
-            return new EmptyState();
-        } else if (charClass.exclusive()) {
-            return new NotState(charClassState);
-        } else {
-            return charClassState;
+
+        @Override
+        Fragment result() {
+            return f;
         }
     }
 
-    @Override
-    public State visit(CharacterClassIntervalNode interval) {
-        return new CharacterIntervalState(interval.lowBound().token().text().charAt(0),
-                interval.highBound().token().text().charAt(0));
+    /**
+     * Compile mandatory copies of term, then optional copies nested in each other,
+     * so each next copy is tried only after previous one: x{1,3} = x(x(x)?)?
+     */
+    private final class BoundedRepetition extends Task<Fragment> {
+        private final BoundedQuantifierNode quantifier;
+        private Fragment f = Fragment.EMPTY;
+        /** Exits of splits which skip optional copies */
+        private int exits = NIL;
+        private int copies;
+
+        BoundedRepetition(BoundedQuantifierNode quantifier) {
+            this.quantifier = quantifier;
+        }
+
+        @Override
+        AST next(Fragment term) {
+            if (term != null) {
+                if (copies <= quantifier.lowBound()) {
+                    f = concat(f, term);
+                } else if (term.isEmpty()) {
+                    copies = quantifier.highBound();
+                } else {
+                    int split = emit(SPLIT, 0);
+                    next[split] = term.start;
+                    alt[split] = NIL;
+                    exits = append(slot(split, true), exits);
+                    f = concat(f, new Fragment(split, term.out));
+                }
+            }
+            if (copies < quantifier.highBound()) {
+                copies++;
+                return quantifier.term();
+            }
+            f = new Fragment(f.start, append(exits, f.out));
+            return null;
+        }
+
+        @Override
+        Fragment result() {
+            return f;
+        }
     }
 
-    @Override
-    public State visit(CharacterNode character) {
-        return new CharacterState(character.token().text().charAt(0));
+    /**
+     * Compile mandatory copies of term, then one more copy which loops back to split before it
+     */
+    private final class UnboundedRepetition extends Task<Fragment> {
+        private final AST term;
+        private final int times;
+        private Fragment f;
+        private int copies;
+
+        /**
+         * @param f compiled start of repetition
+         * @param times number of mandatory copies to compile after it
+         */
+        UnboundedRepetition(AST term, Fragment f, int times) {
+            this.term = term;
+            this.f = f;
+            this.times = times;
+        }
+
+        @Override
+        AST next(Fragment copy) {
+            if (copy != null) {
+                if (copies <= times) {
+                    f = concat(f, copy);
+                } else {
+                    if (!copy.isEmpty()) {
+                        int split = emit(SPLIT, 0);
+                        next[split] = copy.start;
+                        alt[split] = NIL;
+                        patch(copy.out, split);
+                        f = concat(f, new Fragment(split, slot(split, true)));
+                    }
+                    return null;
+                }
+            }
+            copies++;
+            return term;
+        }
+
+        @Override
+        Fragment result() {
+            return f;
+        }
     }
 
-    @Override
-    public State visit(AnchorNode anchor) {
-        switch (anchor.token().type()) {
-            case CARET:  return new LineStartState();
-            case DOLLAR: return new LineEndState();
-            default: throw new Error("Unexpected token");
+    /**
+     * Compiled part of program: first instruction and list of dangling exits
+     */
+    static final class Fragment {
+        static final Fragment EMPTY = new Fragment(NIL, NIL);
+
+        final int start;
+        final int out;
+
+        Fragment(int start, int out) {
+            this.start = start;
+            this.out = out;
+        }
+
+        boolean isEmpty() {
+            return start == NIL;
         }
     }
 }
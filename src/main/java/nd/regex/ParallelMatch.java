@@ -0,0 +1,88 @@
+package nd.regex;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parallel matching of long input with complete {@link DFA}.
+ * Input is split to chunks which are matched on fork-join pool. State at the start of chunk is not known
+ * until all previous chunks are matched, so every chunk is run speculatively from all states at once
+ * with {@link DFA#transitions}, and state mappings of adjacent chunks are composed.
+ * Result is the same as of matching the whole input with one thread.
+ */
+final class ParallelMatch extends RecursiveTask<int[]> {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Shorter chunks cost more to schedule and compose than to match */
+    static final int MIN_CHUNK = 1 << 16;
+    /** Number of chunks per thread of pool, so threads which finish early take chunks of others */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final DFA dfa;
+    private final CharSequence input;
+    private final int start;
+    private final int end;
+    private final int chunk;
+
+    private ParallelMatch(DFA dfa, CharSequence input, int start, int end, int chunk) {
+        this.dfa = dfa;
+        this.input = input;
+        this.start = start;
+        this.end = end;
+        this.chunk = chunk;
+    }
+
+    /**
+     * Check if region of input matches DFA
+     * @param dfa DFA
+     * @param input input
+     * @param start start of region
+     * @param end end of region, exclusive
+     * @param pool pool to match chunks on
+     * @param minChunk minimal length of chunk
+     * @return true if region matches
+     */
+    static boolean matches(DFA dfa, CharSequence input, int start, int end, ForkJoinPool pool, int minChunk) {
+        int chunk = chunk(end - start, pool, minChunk);
+        if (end - start <= chunk) return dfa.matches(input, start, end);
+        int[] transitions = pool.invoke(new ParallelMatch(dfa, input, start, end, chunk));
+        return dfa.accepts(transitions[dfa.start()]);
+    }
+
+    /**
+     * @param length length of input
+     * @param pool pool to match chunks on
+     * @param minChunk minimal length of chunk
+     * @return length of chunks input is split to
+     */
+    static int chunk(int length, ForkJoinPool pool, int minChunk) {
+        return Math.max(minChunk, length / (CHUNKS_PER_THREAD * pool.getParallelism()));
+    }
+
+    /**
+     * Every chunk is run from all states, so parallel matching does more work than matching by one thread
+     * when number of states is larger than number of chunks
+     * @param dfa DFA
+     * @param length length of input
+     * @param chunk length of chunk
+     * @return true if parallel matching does not do more work than one thread
+     */
+    static boolean profitable(DFA dfa, int length, int chunk) {
+        return (long) dfa.stateCount() * chunk <= length;
+    }
+
+    @Override
+    protected int[] compute() {
+        if (end - start <= chunk) return dfa.transitions(input, start, end);
+        int middle = start + (end - start) / 2;
+        ParallelMatch left = new ParallelMatch(dfa, input, start, middle, chunk);
+        left.fork();
+        int[] second = new ParallelMatch(dfa, input, middle, end, chunk).compute();
+        int[] first = left.join();
+        for (int state = 0; state < first.length; state++) {
+            first[state] = second[first[state]];
+        }
+        return first;
+    }
+}
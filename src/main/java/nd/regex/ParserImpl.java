@@ -15,6 +15,7 @@ final class ParserImpl implements Parser {
     private final List<Token> tokens = new ArrayList<Token>();
     private Token current;
     private int currentIndex = -1;
+    private int groupCount;
 
     ParserImpl(Lexer lexer) {
         this.lexer = lexer;
@@ -24,10 +25,39 @@ final class ParserImpl implements Parser {
     @Override
     public AST parse() {
         init();
-        AST root = new SequenceNode(new Token(Type.SEQUENCE, ""), true);
+        SequenceNode root = new SequenceNode(new Token(Type.SEQUENCE, ""), true);
+        //groups are parsed with explicit stack, so deeply nested groups do not overflow call stack:
+        //outer groups and nodes which tokens were added to in them, node is group itself or its alternative
+        List<AST> outerGroups = new ArrayList<AST>();
+        List<AST> outerRoots = new ArrayList<AST>();
+        AST group = root;
+        AST currentRoot = root;
         while (current.type() != Type.EOF) {
-            parse(root, current);
+            switch (current.type()) {
+                case LEFT_PAREN:
+                    outerGroups.add(group);
+                    outerRoots.add(currentRoot);
+                    group = new SequenceNode(current, ++groupCount);
+                    currentRoot = group;
+                    match(Type.LEFT_PAREN);
+                    break;
+                case RIGHT_PAREN:
+                    if (outerGroups.isEmpty()) throw new UnexpectedTokenException(current);
+                    match(Type.RIGHT_PAREN);
+                    AST closed = group;
+                    group = outerGroups.remove(outerGroups.size() - 1);
+                    currentRoot = outerRoots.remove(outerRoots.size() - 1);
+                    currentRoot.addChild(closed);
+                    break;
+                case OR:
+                    currentRoot = parseAlternative(currentRoot);
+                    break;
+                default:
+                    parse(currentRoot, current);
+            }
         }
+        if (!outerGroups.isEmpty()) throw new UnexpectedTokenException(current);
+        root.setGroupCount(groupCount);
         return root;
     }
 
@@ -47,12 +77,6 @@ final class ParserImpl implements Parser {
             case LEFT_BRACKET_CARET:
                 parseCharacterClass(currentRoot);
                 break;
-            case OR:
-                parseAlternative(currentRoot, false);
-                break;
-            case LEFT_PAREN:
-                parseGroup(currentRoot);
-                break;
             case CLASS_ANY_CHARACTER:
             case CLASS_DIGIT:
             case CLASS_NON_DIGIT:
@@ -166,7 +190,12 @@ final class ParserImpl implements Parser {
         }
     }
 
-    private void parseAlternative(AST currentRoot, boolean inGroup) {
+    /**
+     * Nodes parsed so far become the first alternative, the rest of alternatives is nested
+     * in the second one: a|b|c = a|(b|c)
+     * @return node to add the following nodes to
+     */
+    private AST parseAlternative(AST currentRoot) {
         match(Type.OR);
         List<AST> firstAlternative = new ArrayList<AST>();
         while (!currentRoot.children().isEmpty()) {
@@ -174,31 +203,8 @@ final class ParserImpl implements Parser {
         }
         Collections.reverse(firstAlternative);
         AST alternative = new AlternativeNode(firstAlternative);
-        while (current.type() != Type.EOF) {
-            if (inGroup && current.type() == Type.RIGHT_PAREN) break;
-            parse(alternative, current);
-        }
         currentRoot.addChild(alternative);
-    }
-
-    private void parseGroup(AST currentRoot) {
-        AST group = new SequenceNode(current);
-        match(Type.LEFT_PAREN);
-        while (current.type() != Type.RIGHT_PAREN) {
-            switch (current.type()) {
-                case OR:
-                    parseAlternative(group, true);
-                    break;
-                case LEFT_PAREN:
-                    parseGroup(group);
-                    break;
-                default:
-                    parse(group, current);
-                    break;
-            }
-        }
-        match(Type.RIGHT_PAREN);
-        currentRoot.addChild(group);
+        return alternative;
     }
 
     private void parseCharacterClass(AST currentRoot) {
@@ -301,12 +307,12 @@ final class ParserImpl implements Parser {
 
     //nodes for predefined character classes:
     private static final CharacterClassNode ANY_CHARACTER_CLASS_NODE = new CharacterClassNode(new Token(Type.CLASS_ANY_CHARACTER, "."));
-    private static final CharacterClassNode ANY_DIGIT_CLASS_NODE = new CharacterClassNode(new Token(Type.LEFT_BRACKET, "["));
-    private static final CharacterClassNode ANY_NON_DIGIT_CLASS_NODE = new CharacterClassNode(new Token(Type.LEFT_BRACKET_CARET, "[^"));
-    private static final CharacterClassNode ANY_WHITESPACE_CLASS_NODE = new CharacterClassNode(new Token(Type.LEFT_BRACKET, "["));
-    private static final CharacterClassNode ANY_NON_WHITESPACE_CLASS_NODE = new CharacterClassNode(new Token(Type.LEFT_BRACKET_CARET, "[^"));
-    private static final CharacterClassNode ANY_WORD_CHARACTER_CLASS_NODE = new CharacterClassNode(new Token(Type.LEFT_BRACKET, "["));
-    private static final CharacterClassNode ANY_NON_WORD_CHARACTER_CLASS_NODE = new CharacterClassNode(new Token(Type.LEFT_BRACKET_CARET, "[^"));
+    private static final CharacterClassNode ANY_DIGIT_CLASS_NODE = new CharacterClassNode(new Token(Type.CLASS_DIGIT, "\\d"));
+    private static final CharacterClassNode ANY_NON_DIGIT_CLASS_NODE = new CharacterClassNode(new Token(Type.CLASS_NON_DIGIT, "\\D"));
+    private static final CharacterClassNode ANY_WHITESPACE_CLASS_NODE = new CharacterClassNode(new Token(Type.CLASS_WHITESPACE, "\\s"));
+    private static final CharacterClassNode ANY_NON_WHITESPACE_CLASS_NODE = new CharacterClassNode(new Token(Type.CLASS_NON_WHITESPACE, "\\S"));
+    private static final CharacterClassNode ANY_WORD_CHARACTER_CLASS_NODE = new CharacterClassNode(new Token(Type.CLASS_WORD_CHARACTER, "\\w"));
+    private static final CharacterClassNode ANY_NON_WORD_CHARACTER_CLASS_NODE = new CharacterClassNode(new Token(Type.CLASS_NON_WORD_CHARACTER, "\\W"));
 
     static {
         CharacterClassIntervalNode digitsInterval = new CharacterClassIntervalNode(
@@ -319,6 +325,7 @@ final class ParserImpl implements Parser {
         whitespaces.add(new CharacterNode(new Token(Type.CHARACTER, " ")));
         whitespaces.add(new CharacterNode(new Token(Type.CHARACTER, "\t")));
         whitespaces.add(new CharacterNode(new Token(Type.CHARACTER, "\n")));
+        whitespaces.add(new CharacterNode(new Token(Type.CHARACTER, "\u000B")));
         whitespaces.add(new CharacterNode(new Token(Type.CHARACTER, "\f")));
         whitespaces.add(new CharacterNode(new Token(Type.CHARACTER, "\r")));
         for (CharacterNode ws : whitespaces) {
@@ -330,8 +337,8 @@ final class ParserImpl implements Parser {
                 new CharacterNode(new Token(Type.CHARACTER, "a")),
                 new CharacterNode(new Token(Type.CHARACTER, "z")));
         CharacterClassIntervalNode upperCaseInterval = new CharacterClassIntervalNode(
-                new CharacterNode(new Token(Type.CHARACTER, "a")),
-                new CharacterNode(new Token(Type.CHARACTER, "z")));
+                new CharacterNode(new Token(Type.CHARACTER, "A")),
+                new CharacterNode(new Token(Type.CHARACTER, "Z")));
         ANY_WORD_CHARACTER_CLASS_NODE.addChild(lowerCaseInterval);
         ANY_WORD_CHARACTER_CLASS_NODE.addChild(upperCaseInterval);
         ANY_WORD_CHARACTER_CLASS_NODE.addChild(digitsInterval);
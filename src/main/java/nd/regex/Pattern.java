@@ -0,0 +1,423 @@
+package nd.regex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Compiled regular expression.
+ * Pattern is immutable: it can be shared between threads and used to match any number of strings
+ * without compiling it again. Instances are created with {@link Matcher#compile(String)}.
+ * Work memory for matching is kept in a pool of pattern with at most one entry per processor and reused,
+ * so matching allocates nothing and the memory is released together with pattern.
+ * <p>
+ * Strings are matched with lazily built DFA, every concurrent call works with its own DFA from the pool.
+ * Memory used by DFA states of one DFA is limited with system property {@code nd.regex.dfa.memory}
+ * (in bytes, 1M by default).
+ * If DFA can not match string within this limit, string is matched by emulating NFA.
+ * Small patterns can be compiled to complete minimal DFA ahead of time with {@link Matcher#compile(String, int)},
+ * engine chosen for pattern is reported by {@link #engine()}.
+ * <p>
+ * Substrings matching pattern are searched with {@link #find(String)} and {@link #findAll(String)} by emulating NFA,
+ * time of search is linear in length of string.
+ * <p>
+ * Before running any engine string is checked to contain literals which every match of pattern contains,
+ * like {@code timeout} in {@code .*timeout.*(db|cache).*}, so most of non-matching strings are rejected
+ * with fast substring search.
+ */
+public final class Pattern {
+
+    /**
+     * Engine used to match strings
+     */
+    public static enum Engine {
+        /** Complete minimal DFA built at compile time */
+        DFA,
+        /** DFA built lazily while matching, backed by NFA emulation */
+        LAZY_DFA
+    }
+
+    static final long DFA_MEMORY_LIMIT = Long.getLong("nd.regex.dfa.memory", 1 << 20);
+    /** Maximum number of states of DFA built for parallel matching, every chunk is run from all of them */
+    private static final int PARALLEL_DFA_STATE_LIMIT = 1024;
+    /** Minimal number of inputs matched by one task of batch */
+    private static final int MIN_BATCH = 256;
+    /** Number of batches per thread of pool, so threads which finish early take batches of others */
+    private static final int BATCHES_PER_THREAD = 8;
+
+    private final String pattern;
+    private final Program program;
+    private final DFA dfa;
+    private final Pool<NFA> nfa;
+    private final Pool<LazyDFA> lazyDFA;
+    private final Pool<LazyDFA> utf8DFA;
+    /** Program over UTF-8 bytes, compiled on first use */
+    private Program utf8Program;
+    /** DFA for parallel matching, built on first use, null if pattern has too many states */
+    private volatile DFA parallelDFA;
+    private volatile boolean parallelDFABuilt;
+
+    Pattern(String pattern, final Program program, DFA dfa) {
+        this.pattern = pattern;
+        this.program = program;
+        this.dfa = dfa;
+        this.nfa = new Pool<NFA>() {
+            @Override
+            NFA create() {
+                return new NFA(program);
+            }
+        };
+        this.lazyDFA = new Pool<LazyDFA>() {
+            @Override
+            LazyDFA create() {
+                return new LazyDFA(program, DFA_MEMORY_LIMIT);
+            }
+        };
+        this.utf8DFA = new Pool<LazyDFA>() {
+            @Override
+            LazyDFA create() {
+                return new LazyDFA(utf8Program(), DFA_MEMORY_LIMIT);
+            }
+        };
+    }
+
+    /**
+     * Check if string matches this pattern.
+     * Any {@link CharSequence} is matched in place, like {@link StringBuilder} or {@link CharBuffer}.
+     * @param input string to check
+     * @return true if string matches pattern, otherwise false
+     */
+    public boolean matches(CharSequence input) {
+        if (input == null) throw new IllegalArgumentException("input = null");
+        return matches(input, 0, input.length());
+    }
+
+    /**
+     * Check if region of input matches this pattern, as if region was the whole string:
+     * {@code ^} and {@code $} match at bounds of region
+     * @param input input
+     * @param start start of region
+     * @param end end of region, exclusive
+     * @return true if region matches pattern, otherwise false
+     */
+    public boolean matches(CharSequence input, int start, int end) {
+        if (input == null) throw new IllegalArgumentException("input = null");
+        if (start < 0 || start > end || end > input.length()) throw new IndexOutOfBoundsException(String
+                .format("start = %s, end = %s, length = %s", start, end, input.length()));
+        if (dfa != null) return matches(input, start, end, null);
+        LazyDFA lazy = lazyDFA.take();
+        try {
+            return matches(input, start, end, lazy);
+        } finally {
+            lazyDFA.release(lazy);
+        }
+    }
+
+    private boolean matches(CharSequence input, int start, int end, LazyDFA lazy) {
+        if (!program.mayMatch(input, start, end)) return false;
+        if (dfa != null) return dfa.matches(input, start, end);
+        int result = lazy.match(input, start, end);
+        if (result != LazyDFA.FAILED) return result == LazyDFA.MATCHES;
+        NFA emulator = nfa.take();
+        try {
+            return emulator.emulate(input, start, end);
+        } finally {
+            nfa.release(emulator);
+        }
+    }
+
+    /**
+     * Check which of many strings match this pattern using threads of pool.
+     * Strings are split to batches, every batch is matched with work memory taken from the pool of pattern
+     * once, so threads share nothing but this pattern.
+     * @param inputs strings to check
+     * @param pool pool to match batches on
+     * @return set of indexes of matching strings
+     */
+    public BitSet matches(List<? extends CharSequence> inputs, ForkJoinPool pool) {
+        if (inputs == null) throw new IllegalArgumentException("inputs = null");
+        if (pool == null) throw new IllegalArgumentException("pool = null");
+        List<? extends CharSequence> list = inputs instanceof RandomAccess
+                ? inputs : new ArrayList<CharSequence>(inputs);
+        boolean[] results = new boolean[list.size()];
+        int batch = Math.max(MIN_BATCH, list.size() / (BATCHES_PER_THREAD * pool.getParallelism()));
+        pool.invoke(new Batch(list, results, 0, results.length, batch));
+        BitSet matching = new BitSet(results.length);
+        for (int i = 0; i < results.length; i++) {
+            if (results[i]) matching.set(i);
+        }
+        return matching;
+    }
+
+    /**
+     * Check which of many strings match this pattern using threads of pool,
+     * like {@link #matches(List, ForkJoinPool)} does
+     * @param inputs strings to check
+     * @param pool pool to match batches on
+     * @return set of indexes of matching strings
+     */
+    public BitSet matches(CharSequence[] inputs, ForkJoinPool pool) {
+        if (inputs == null) throw new IllegalArgumentException("inputs = null");
+        return matches(Arrays.asList(inputs), pool);
+    }
+
+    /**
+     * Check if characters of array match this pattern, array is not copied
+     * @param chars array with characters
+     * @param offset index of the first character in array
+     * @param length number of characters
+     * @return true if characters match pattern, otherwise false
+     */
+    public boolean matches(char[] chars, int offset, int length) {
+        if (chars == null) throw new IllegalArgumentException("chars = null");
+        if (offset < 0 || length < 0 || offset + length > chars.length) {
+            throw new IndexOutOfBoundsException(String.format("offset = %s, length = %s, array length = %s",
+                    offset, length, chars.length));
+        }
+        return matches(CharBuffer.wrap(chars), offset, offset + length);
+    }
+
+    /**
+     * Check if long string matches this pattern using threads of pool.
+     * String is split to chunks which are matched in parallel by complete DFA: every chunk is run
+     * from all DFA states at once, then results of chunks are composed. Patterns whose DFA has more states
+     * than string has chunks and short strings are matched by the calling thread as {@link #matches(CharSequence)}
+     * does.
+     * @param input string to check, it must not be modified while matching
+     * @param pool pool to match chunks on
+     * @return true if string matches pattern, otherwise false
+     */
+    public boolean matchesParallel(CharSequence input, ForkJoinPool pool) {
+        if (input == null) throw new IllegalArgumentException("input = null");
+        if (pool == null) throw new IllegalArgumentException("pool = null");
+        DFA parallel = parallelDFA();
+        int chunk = ParallelMatch.chunk(input.length(), pool, ParallelMatch.MIN_CHUNK);
+        if (parallel == null || input.length() <= chunk || !ParallelMatch.profitable(parallel, input.length(), chunk)) {
+            return matches(input);
+        }
+        return ParallelMatch.matches(parallel, input, 0, input.length(), pool, ParallelMatch.MIN_CHUNK);
+    }
+
+    /**
+     * Check if UTF-8 encoded string matches this pattern. Bytes are matched by lazily built DFA
+     * without decoding them, malformed sequences never match.
+     * Unlike {@link #matches(CharSequence)}, supplementary character is one character rather than a surrogate pair:
+     * it is matched by {@code .} and by negated classes, and never by a pair of surrogates in pattern.
+     * @param bytes UTF-8 encoded string
+     * @return true if string matches pattern, otherwise false
+     */
+    public boolean matchesUtf8(byte[] bytes) {
+        if (bytes == null) throw new IllegalArgumentException("bytes = null");
+        return matchesUtf8(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Check if UTF-8 encoded bytes between position and limit of buffer match this pattern,
+     * like {@link #matchesUtf8(byte[])} does. Position of buffer is not changed.
+     * @param bytes buffer with UTF-8 encoded string
+     * @return true if string matches pattern, otherwise false
+     */
+    public boolean matchesUtf8(ByteBuffer bytes) {
+        if (bytes == null) throw new IllegalArgumentException("bytes = null");
+        LazyDFA lazy = utf8DFA.take();
+        try {
+            return lazy.match(bytes) == LazyDFA.MATCHES;
+        } finally {
+            utf8DFA.release(lazy);
+        }
+    }
+
+    /**
+     * Find the first substring which matches this pattern.
+     * Of matches with the same start the one found by {@link java.util.regex.Matcher#find()} is chosen.
+     * The only difference is repeated group which can match empty string, like {@code (a|)*}:
+     * java.util.regex stops repeating after empty iteration, while this method continues with other alternatives.
+     * @param str string to search in
+     * @return match or null if there is no match
+     */
+    public Match find(String str) {
+        return find(str, 0);
+    }
+
+    /**
+     * Find the first substring which matches this pattern and starts at from or later
+     * @param str string to search in
+     * @param from position to start search from
+     * @return match or null if there is no match
+     */
+    public Match find(String str, int from) {
+        if (str == null) throw new IllegalArgumentException("str = null");
+        if (from < 0 || from > str.length()) throw new IndexOutOfBoundsException("Illegal start index " + from);
+        if (!program.mayMatch(str, from)) return null;
+        NFA emulator = nfa.take();
+        try {
+            int[] slots = new int[emulator.slotCount()];
+            return emulator.search(str, from, slots) ? new Match(slots) : null;
+        } finally {
+            nfa.release(emulator);
+        }
+    }
+
+    /**
+     * Find all non-overlapping substrings which match this pattern, from left to right.
+     * Search continues from the end of previous match, or from the next character if the match is empty.
+     * @param str string to search in
+     * @return list of matches, empty if there are no matches
+     */
+    public List<Match> findAll(String str) {
+        if (str == null) throw new IllegalArgumentException("str = null");
+        NFA emulator = nfa.take();
+        try {
+            List<Match> matches = new ArrayList<Match>();
+            int from = 0;
+            while (from <= str.length() && program.mayMatch(str, from)) {
+                int[] slots = new int[emulator.slotCount()];
+                if (!emulator.search(str, from, slots)) break;
+                matches.add(new Match(slots));
+                from = slots[1] == slots[0] ? slots[1] + 1 : slots[1];
+            }
+            return matches;
+        } finally {
+            nfa.release(emulator);
+        }
+    }
+
+    /**
+     * Match the whole string and find substrings matched by capturing groups.
+     * Groups get the same bounds as with {@link java.util.regex.Matcher#matches()}, time is linear in length of string.
+     * @param str string to match
+     * @return match or null if string does not match pattern
+     */
+    public Match match(String str) {
+        if (str == null) throw new IllegalArgumentException("str = null");
+        //automaton rejects non-matching strings faster than capturing search
+        if (!matches(str)) return null;
+        NFA emulator = nfa.take();
+        try {
+            int[] slots = new int[emulator.slotCount()];
+            return emulator.capture(str, slots) ? new Match(slots) : null;
+        } finally {
+            nfa.release(emulator);
+        }
+    }
+
+    /**
+     * @return number of capturing groups in pattern
+     */
+    public int groupCount() {
+        return program.groups;
+    }
+
+    /**
+     * Find lines of file which contain match of this pattern, like grep does.
+     * File is mapped to memory and scanned without creating strings, lines are terminated by {@code '\n'}
+     * or {@code "\r\n"} and every line is matched as separate input, so {@code ^} and {@code $} match
+     * at line bounds. Lines which lack literal required by pattern are skipped without matching.
+     * @param file file to search in
+     * @param charset encoding of file: ISO-8859-1, US-ASCII or UTF-8
+     * @param listener receiver of matching lines
+     * @return number of matching lines reported to listener
+     * @throws IOException if file can not be read
+     */
+    public long grep(Path file, Charset charset, GrepListener listener) throws IOException {
+        if (file == null || charset == null || listener == null) throw new IllegalArgumentException(String
+                .format("file = %s, charset = %s, listener = %s", file, charset, listener));
+        return Grep.grep(program, file, charset, listener, Grep.WINDOW);
+    }
+
+    /**
+     * Create matcher for input which arrives in chunks
+     * @return new matcher, it should be used by one thread
+     */
+    public StreamMatcher streamMatcher() {
+        return new StreamMatcher(program, dfa);
+    }
+
+    /**
+     * Task which matches range of inputs and splits it while it is longer than batch
+     */
+    private final class Batch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<? extends CharSequence> inputs;
+        private final boolean[] results;
+        private final int from;
+        private final int to;
+        private final int batch;
+
+        Batch(List<? extends CharSequence> inputs, boolean[] results, int from, int to, int batch) {
+            this.inputs = inputs;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.batch = batch;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > batch) {
+                int middle = from + (to - from) / 2;
+                invokeAll(new Batch(inputs, results, from, middle, batch),
+                        new Batch(inputs, results, middle, to, batch));
+                return;
+            }
+            LazyDFA lazy = dfa == null ? lazyDFA.take() : null;
+            try {
+                for (int i = from; i < to; i++) {
+                    CharSequence input = inputs.get(i);
+                    if (input == null) throw new IllegalArgumentException("inputs[" + i + "] = null");
+                    results[i] = matches(input, 0, input.length(), lazy);
+                }
+            } finally {
+                if (lazy != null) lazyDFA.release(lazy);
+            }
+        }
+    }
+
+    private DFA parallelDFA() {
+        if (dfa != null) return dfa;
+        if (!parallelDFABuilt) {
+            synchronized (this) {
+                if (!parallelDFABuilt) {
+                    parallelDFA = DFA.build(program, PARALLEL_DFA_STATE_LIMIT);
+                    parallelDFABuilt = true;
+                }
+            }
+        }
+        return parallelDFA;
+    }
+
+    private synchronized Program utf8Program() {
+        if (utf8Program == null) utf8Program = Utf8Compiler.compile(program);
+        return utf8Program;
+    }
+
+    /**
+     * @return engine used to match strings
+     */
+    public Engine engine() {
+        return dfa != null ? Engine.DFA : Engine.LAZY_DFA;
+    }
+
+    /**
+     * @return source of this pattern
+     */
+    public String pattern() {
+        return pattern;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -0,0 +1,207 @@
+package nd.regex;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of compiled patterns with approximate least-recently-used eviction.
+ * Cache is safe to use from many threads. Concurrent misses on the same pattern compile it only once:
+ * the first thread compiles pattern, others wait for its result. Patterns with syntax errors are not cached.
+ * <p>
+ * Hits take no lock, they only stamp entry with {@link System#nanoTime()}. Miss which overflows cache
+ * evicts the least recently used of a few random entries under lock, so eviction takes constant time
+ * and is exact for caches of up to 8 patterns.
+ */
+public final class PatternCache {
+
+    /** Number of entries compared to choose one to evict */
+    private static final int SAMPLE = 8;
+
+    private final int maximumSize;
+    private final ConcurrentMap<String, Entry> patterns = new ConcurrentHashMap<String, Entry>();
+    private final Object evictionLock = new Object();
+    /** Entries for random sampling, guarded by {@link #evictionLock} */
+    private Entry[] entries = new Entry[16];
+    private int count;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create cache
+     * @param maximumSize maximum number of patterns to keep, 0 disables caching
+     */
+    public PatternCache(final int maximumSize) {
+        if (maximumSize < 0) throw new IllegalArgumentException("Negative maximum size " + maximumSize);
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Get compiled pattern from cache, compile and cache it if it is absent
+     * @param pattern pattern to compile
+     * @return compiled pattern
+     */
+    public Pattern get(final String pattern) {
+        if (pattern == null) throw new IllegalArgumentException("pattern = null");
+        if (maximumSize == 0) {
+            misses.incrementAndGet();
+            return Matcher.compile(pattern);
+        }
+        Entry entry = patterns.get(pattern);
+        if (entry == null) {
+            Entry created = new Entry(pattern);
+            entry = patterns.putIfAbsent(pattern, created);
+            if (entry == null) {
+                misses.incrementAndGet();
+                created.access = System.nanoTime();
+                add(created);
+                created.task.run();
+                return await(pattern, created);
+            }
+        }
+        hits.incrementAndGet();
+        entry.access = System.nanoTime();
+        return await(pattern, entry);
+    }
+
+    /**
+     * Register entry put to cache, then evict patterns until cache fits into its maximum size
+     */
+    private void add(Entry entry) {
+        synchronized (evictionLock) {
+            if (count == entries.length) entries = Arrays.copyOf(entries, 2 * count);
+            entry.index = count;
+            entries[count++] = entry;
+            while (count > maximumSize) {
+                Entry eldest = entries[count - 1];
+                int sample = Math.min(SAMPLE, count);
+                for (int i = 0; i < sample; i++) {
+                    //all entries are compared when there are at most SAMPLE of them
+                    Entry e = entries[sample == count ? i : ThreadLocalRandom.current().nextInt(count)];
+                    if (e.access - eldest.access < 0) eldest = e;
+                }
+                remove(eldest);
+                if (patterns.remove(eldest.pattern, eldest)) evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Unregister entry, guarded by {@link #evictionLock}
+     */
+    private void remove(Entry entry) {
+        if (entry.index < 0) return;
+        Entry last = entries[--count];
+        entries[entry.index] = last;
+        last.index = entry.index;
+        entries[count] = null;
+        entry.index = -1;
+    }
+
+    private Pattern await(String pattern, Entry entry) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return entry.task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (patterns.remove(pattern, entry)) {
+                        synchronized (evictionLock) {
+                            remove(entry);
+                        }
+                    }
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                    if (cause instanceof Error) throw (Error) cause;
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Remove all patterns from cache. Statistics is not reset.
+     */
+    public void clear() {
+        synchronized (evictionLock) {
+            for (int i = 0; i < count; i++) {
+                patterns.remove(entries[i].pattern, entries[i]);
+                entries[i].index = -1;
+                entries[i] = null;
+            }
+            count = 0;
+        }
+    }
+
+    /**
+     * @return number of patterns in cache
+     */
+    public int size() {
+        return patterns.size();
+    }
+
+    /**
+     * @return maximum number of patterns in cache
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return number of requests served from cache
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of requests which compiled pattern
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of patterns removed from cache to free space for others
+     */
+    public long evictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PatternCache(size = %d/%d, hits = %d, misses = %d, evictions = %d)",
+                size(), maximumSize, hits(), misses(), evictions());
+    }
+
+    /**
+     * Pattern compiled once by the thread which missed it, stamped with time of the last access
+     */
+    private static final class Entry {
+        final String pattern;
+        final FutureTask<Pattern> task;
+        volatile long access;
+        /** Index in {@link PatternCache#entries} or -1 if entry is removed, guarded by eviction lock */
+        int index = -1;
+
+        Entry(final String pattern) {
+            this.pattern = pattern;
+            task = new FutureTask<Pattern>(new Callable<Pattern>() {
+                @Override
+                public Pattern call() {
+                    return Matcher.compile(pattern);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package nd.regex;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded pool of work memory of automaton.
+ * Matching takes object from pool and returns it when done, so work memory is reused by calls from any thread
+ * and is released together with the owner of pool. Pool keeps at most one object per processor,
+ * object returned to full pool is dropped.
+ * @param <T> type of pooled objects
+ */
+abstract class Pool<T> {
+
+    private static final int SIZE = Runtime.getRuntime().availableProcessors();
+
+    private final AtomicReferenceArray<T> objects = new AtomicReferenceArray<T>(SIZE);
+
+    /**
+     * @return new object for pool which has no free objects
+     */
+    abstract T create();
+
+    /**
+     * @return free object of pool or new one, it must be returned with {@link #release(Object)}
+     */
+    T take() {
+        //threads start from different slots, so they rarely compete for the same one
+        int first = start();
+        for (int i = 0; i < SIZE; i++) {
+            int slot = (first + i) % SIZE;
+            if (objects.get(slot) != null) {
+                T object = objects.getAndSet(slot, null);
+                if (object != null) return object;
+            }
+        }
+        return create();
+    }
+
+    /**
+     * @param object object taken from this pool
+     */
+    void release(T object) {
+        int first = start();
+        for (int i = 0; i < SIZE; i++) {
+            int slot = (first + i) % SIZE;
+            if (objects.get(slot) == null && objects.compareAndSet(slot, null, object)) return;
+        }
+    }
+
+    private static int start() {
+        return (int) (Thread.currentThread().getId() % SIZE);
+    }
+}
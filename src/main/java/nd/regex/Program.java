@@ -0,0 +1,238 @@
+package nd.regex;
+
+import java.util.Arrays;
+
+/**
+ * NFA compiled to flat program of instructions (Pike VM style).
+ * Instruction with number pc is described by four parallel arrays:
+ * <ul>
+ *     <li>{@code op[pc]} - operation code</li>
+ *     <li>{@code arg[pc]} - operand: character for {@link #CHAR}, index of character class for {@link #CLASS},
+ *     capture slot for {@link #SAVE}, minimal number of repetitions for {@link #COUNT}</li>
+ *     <li>{@code next[pc]} - next instruction</li>
+ *     <li>{@code alt[pc]} - alternative next instruction for {@link #SPLIT}, maximal number of repetitions
+ *     for {@link #COUNT}</li>
+ * </ul>
+ * Thread of program is instruction and number of repetitions made by counter which thread is inside of,
+ * it is 0 for threads outside of counters. Both are packed to one long with {@link #thread(int, int)}.
+ * <p>
+ * Program is immutable after creation, only its {@link #closures()} are computed on first use.
+ */
+final class Program {
+
+    /** Consume character equal to operand */
+    static final int CHAR = 0;
+    /** Consume any character */
+    static final int ANY = 1;
+    /** Consume character from character class */
+    static final int CLASS = 2;
+    /** Continue with both next and alt instructions, next has higher priority */
+    static final int SPLIT = 3;
+    /** Continue with next instruction only at the start of input */
+    static final int LINE_START = 4;
+    /** Continue with next instruction only at the end of input */
+    static final int LINE_END = 5;
+    /** Input matches pattern, operand is number of pattern in program compiled from several patterns */
+    static final int MATCH = 6;
+    /** Save current position to capture slot given by operand and continue with next instruction */
+    static final int SAVE = 7;
+    /**
+     * Counter: repeat instruction pc + 1, which consumes one character and continues with this instruction again.
+     * Thread carries number of repetitions made. While it is less than alt, thread continues with pc + 1
+     * and one more repetition; once it reaches operand, thread may also continue with next instruction
+     * and leaves counter. Repetitions are preferred to leaving, as in greedy quantifier.
+     */
+    static final int COUNT = 8;
+
+    /** Code unit before the start and after the end of input, it never equals to any character */
+    static final int BOUNDARY = -1;
+
+    final int[] op;
+    final int[] arg;
+    final int[] next;
+    final int[] alt;
+    /** Character classes, equal classes are stored once */
+    final CharClass[] classes;
+    final int start;
+    /**
+     * Number of capturing groups. Group n is saved to slots 2n and 2n + 1,
+     * slots 0 and 1 are left for bounds of the whole match
+     */
+    final int groups;
+    /** Characters split to classes which are not distinguished by program */
+    final Alphabet alphabet;
+    /** Literals which every match starts with one of or null if match may start with anything */
+    final AhoCorasick prefixes;
+    /** Literals which every match contains */
+    final String[] required;
+    private Closures closures;
+
+    Program(int[] op, int[] arg, int[] next, int[] alt, CharClass[] classes, int start, int groups,
+            String[] prefixes, String[] required) {
+        this.op = op;
+        this.arg = arg;
+        this.next = next;
+        this.alt = alt;
+        this.classes = classes;
+        this.start = start;
+        this.groups = groups;
+        this.alphabet = Alphabet.of(op, arg, classes);
+        this.prefixes = prefixes.length > 0 ? new AhoCorasick(prefixes) : null;
+        this.required = required;
+    }
+
+    /**
+     * Pack thread
+     * @param pc instruction
+     * @param count number of repetitions made by counter
+     * @return thread
+     */
+    static long thread(int pc, int count) {
+        return (long) pc << 32 | count;
+    }
+
+    /**
+     * @param thread thread
+     * @return instruction of thread
+     */
+    static int pc(long thread) {
+        return (int) (thread >>> 32);
+    }
+
+    /**
+     * @param thread thread
+     * @return number of repetitions made by counter of thread
+     */
+    static int count(long thread) {
+        return (int) thread;
+    }
+
+    /**
+     * @return epsilon closures for {@link NFA}, computed once and shared by all its instances
+     */
+    synchronized Closures closures() {
+        if (closures == null) closures = new Closures(this);
+        return closures;
+    }
+
+    /**
+     * @return true if program contains instruction with given operation code
+     */
+    boolean contains(int operation) {
+        for (int o : op) {
+            if (o == operation) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Create program which matches every string containing match of this program.
+     * Any characters are skipped before this program starts, and its match instructions are reached
+     * as soon as match ends, so {@link LazyDFA#matched(int)} tells that match is found.
+     * @return unanchored program
+     */
+    Program unanchored() {
+        int n = op.length;
+        int[] unanchoredOp = Arrays.copyOf(op, n + 2);
+        int[] unanchoredArg = Arrays.copyOf(arg, n + 2);
+        int[] unanchoredNext = Arrays.copyOf(next, n + 2);
+        int[] unanchoredAlt = Arrays.copyOf(alt, n + 2);
+        //n: split -> start, n + 1; n + 1: any -> n
+        unanchoredOp[n] = SPLIT;
+        unanchoredNext[n] = start;
+        unanchoredAlt[n] = n + 1;
+        unanchoredOp[n + 1] = ANY;
+        unanchoredNext[n + 1] = n;
+        return new Program(unanchoredOp, unanchoredArg, unanchoredNext, unanchoredAlt, classes, n, groups,
+                new String[0], new String[0]);
+    }
+
+    /**
+     * Check if string contains all required literals after position
+     * @param str string
+     * @param from position to check from
+     * @return false if no match can be found in string after position
+     */
+    boolean mayMatch(String str, int from) {
+        return mayMatch(str, from, str.length());
+    }
+
+    /**
+     * Check if region of input contains all required literals
+     * @param input input
+     * @param from start of region
+     * @param to end of region, exclusive
+     * @return false if no match can be found in region
+     */
+    boolean mayMatch(CharSequence input, int from, int to) {
+        for (String literal : required) {
+            //String.indexOf can not be bounded, so it is used only when region ends with string
+            int index = input instanceof String && to == input.length()
+                    ? ((String) input).indexOf(literal, from) : indexOf(input, literal, from, to);
+            if (index < 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Find literal which lies in region entirely, scan stops at the last position it may start at
+     */
+    private static int indexOf(CharSequence input, String literal, int from, int to) {
+        int last = to - literal.length();
+        for (int i = from; i <= last; i++) {
+            int j = 0;
+            while (j < literal.length() && input.charAt(i + j) == literal.charAt(j)) {
+                j++;
+            }
+            if (j == literal.length()) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return number of instructions
+     */
+    int size() {
+        return op.length;
+    }
+
+    /**
+     * Check if consuming instruction accepts character
+     * @param pc instruction
+     * @param c character
+     * @return true if instruction accepts character
+     */
+    boolean accepts(int pc, char c) {
+        switch (op[pc]) {
+            case CHAR:  return arg[pc] == c;
+            case ANY:   return true;
+            case CLASS: return classes[arg[pc]].contains(c);
+            default:    return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int pc = 0; pc < op.length; pc++) {
+            sb.append(pc == start ? "*" : " ").append(pc).append(": ");
+            switch (op[pc]) {
+                case CHAR:       sb.append("char ").append((char) arg[pc]).append(" -> ").append(next[pc]); break;
+                case ANY:        sb.append("any -> ").append(next[pc]); break;
+                case CLASS:      sb.append("class ").append(classes[arg[pc]]).append(" -> ").append(next[pc]); break;
+                case SPLIT:      sb.append("split -> ").append(next[pc]).append(", ").append(alt[pc]); break;
+                case LINE_START: sb.append("^ -> ").append(next[pc]); break;
+                case LINE_END:   sb.append("$ -> ").append(next[pc]); break;
+                case MATCH:      sb.append("match ").append(arg[pc]); break;
+                case SAVE:       sb.append("save ").append(arg[pc]).append(" -> ").append(next[pc]); break;
+                case COUNT:
+                    sb.append("count ").append(arg[pc]).append("..").append(alt[pc]).append(" of ").append(pc + 1)
+                            .append(" -> ").append(next[pc]);
+                    break;
+                default:         sb.append("unknown ").append(op[pc]);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
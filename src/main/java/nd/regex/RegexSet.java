@@ -0,0 +1,79 @@
+package nd.regex;
+
+/**
+ * Set of regular expressions compiled to one automaton.
+ * String is matched against all patterns of the set in a single pass, so time depends on length of string,
+ * not on number of patterns. Patterns are numbered in order they were given to {@link Matcher#compileSet(String...)}.
+ * <p>
+ * Set is immutable and can be shared between threads. Strings are matched with lazily built DFA
+ * whose final states carry numbers of matching patterns, work memory is reused from small pool of the set.
+ * If DFA can not match string within memory limit of {@link Pattern}, string is matched by emulating NFA.
+ */
+public final class RegexSet {
+
+    private final String[] patterns;
+    private final Pool<NFA> nfa;
+    private final Pool<LazyDFA> lazyDFA;
+
+    RegexSet(String[] patterns, final Program program) {
+        this.patterns = patterns;
+        this.nfa = new Pool<NFA>() {
+            @Override
+            NFA create() {
+                return new NFA(program);
+            }
+        };
+        this.lazyDFA = new Pool<LazyDFA>() {
+            @Override
+            LazyDFA create() {
+                return new LazyDFA(program, Pattern.DFA_MEMORY_LIMIT);
+            }
+        };
+    }
+
+    /**
+     * Find all patterns which match the whole string
+     * @param input string to check, any {@link CharSequence} is matched in place
+     * @return numbers of matching patterns in ascending order, empty array if no pattern matches
+     */
+    public int[] matches(CharSequence input) {
+        if (input == null) throw new IllegalArgumentException("input = null");
+        LazyDFA dfa = lazyDFA.take();
+        try {
+            int state = dfa.run(input, 0, input.length());
+            if (state != LazyDFA.FAILED) return dfa.matches(state).clone();
+        } finally {
+            lazyDFA.release(dfa);
+        }
+        NFA emulator = nfa.take();
+        try {
+            return emulator.emulateAll(input, 0, input.length());
+        } finally {
+            nfa.release(emulator);
+        }
+    }
+
+    /**
+     * Check if any pattern matches the whole string
+     * @param input string to check
+     * @return true if at least one pattern matches string
+     */
+    public boolean matchesAny(CharSequence input) {
+        return matches(input).length > 0;
+    }
+
+    /**
+     * @return number of patterns
+     */
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * @param id number of pattern
+     * @return source of pattern
+     */
+    public String pattern(int id) {
+        return patterns[id];
+    }
+}
@@ -0,0 +1,286 @@
+package nd.regex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Required literals extractor.
+ * Find strings which every match of pattern contains, so input without any of them is rejected
+ * with substring search before running automaton. Analysis is conservative: when it is not known
+ * what node matches, nothing is required from it. Nodes with children are analyzed by {@link Task}s.
+ */
+final class RequiredLiterals implements ASTVisitor<Task<RequiredLiterals.Info>> {
+
+    /** Literals are checked one by one, so only the longest ones are kept */
+    private static final int MAX_LITERALS = 4;
+    /**
+     * Dropping literal or part of it never makes analysis wrong, so sets and literals are cut
+     * to keep analysis of huge patterns linear
+     */
+    private static final int MAX_KNOWN = 16;
+    private static final int MAX_LENGTH = 64;
+
+    private static final Info UNKNOWN = new Info(null, "", "", Collections.<String>emptySet());
+    private static final Info EMPTY = new Info("", "", "", Collections.<String>emptySet());
+
+    /**
+     * @param ast root of AST
+     * @return non-empty literals which every match contains, longest first
+     */
+    static String[] of(AST ast) {
+        //literal contained in longer one is checked by it
+        List<String> result = new ArrayList<String>();
+        for (String literal : longestFirst(Task.run(ast, new RequiredLiterals()).all())) {
+            if (literal.isEmpty() || result.size() == MAX_LITERALS) continue;
+            boolean covered = false;
+            for (String longer : result) {
+                covered |= longer.contains(literal);
+            }
+            if (!covered) result.add(literal);
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    @Override
+    public Task<Info> visit(SequenceNode sequence) {
+        return new Sequences(Collections.singletonList(sequence.children()));
+    }
+
+    @Override
+    public Task<Info> visit(BoundedQuantifierNode quantifier) {
+        return new Repetition(quantifier.term(), quantifier.lowBound(),
+                quantifier.lowBound() == quantifier.highBound());
+    }
+
+    @Override
+    public Task<Info> visit(UnboundedQuantifierNode quantifier) {
+        return new Repetition(quantifier.term(), quantifier.lowBound(), false);
+    }
+
+    @Override
+    public Task<Info> visit(CharacterClassNode charClass) {
+        return Task.done(UNKNOWN);
+    }
+
+    @Override
+    public Task<Info> visit(CharacterClassIntervalNode interval) {
+        return Task.done(UNKNOWN);
+    }
+
+    @Override
+    public Task<Info> visit(CharacterNode character) {
+        String c = character.token().text().substring(0, 1);
+        return Task.done(new Info(c, c, c, Collections.<String>emptySet()));
+    }
+
+    @Override
+    public Task<Info> visit(AlternativeNode alternative) {
+        return new Sequences(alternative.alternatives());
+    }
+
+    private static Info alternative(Info first, Info second) {
+        if (first.exact != null && first.exact.equals(second.exact)) return first;
+        Set<String> required = new HashSet<String>(first.all());
+        required.retainAll(second.all());
+        return new Info(null, commonPrefix(first.prefix, second.prefix), commonSuffix(first.suffix, second.suffix),
+                required);
+    }
+
+    @Override
+    public Task<Info> visit(AnchorNode anchor) {
+        return Task.done(EMPTY);
+    }
+
+    /**
+     * Analyze sequences of nodes, the result is their alternative
+     */
+    private static final class Sequences extends Task<Info> {
+        private final List<List<AST>> sequences;
+        private final Info[] infos;
+        private final StringBuilder literal = new StringBuilder();
+        private Info info = EMPTY;
+        private int current;
+        private int index;
+
+        Sequences(List<List<AST>> sequences) {
+            this.sequences = sequences;
+            this.infos = new Info[sequences.size()];
+        }
+
+        @Override
+        AST next(Info child) {
+            if (child != null) info = concat(info, child);
+            while (true) {
+                List<AST> children = sequences.get(current);
+                while (index < children.size()) {
+                    AST node = children.get(index++);
+                    //characters in a row are joined to one literal first, it is much cheaper than concatenating their info
+                    if (node instanceof CharacterNode) {
+                        literal.append(node.token().text().charAt(0));
+                        continue;
+                    }
+                    info = concat(info, literal(literal));
+                    return node;
+                }
+                infos[current++] = concat(info, literal(literal));
+                if (current == infos.length) return null;
+                info = EMPTY;
+                index = 0;
+            }
+        }
+
+        @Override
+        Info result() {
+            Info result = infos[infos.length - 1];
+            for (int i = infos.length - 2; i >= 0; i--) {
+                result = alternative(infos[i], result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Analyze term of quantifier and repeat its info
+     */
+    private static final class Repetition extends Task<Info> {
+        private final AST term;
+        private final int times;
+        private final boolean exactly;
+        private Info info;
+
+        Repetition(AST term, int times, boolean exactly) {
+            this.term = term;
+            this.times = times;
+            this.exactly = exactly;
+        }
+
+        @Override
+        AST next(Info result) {
+            if (result == null) return term;
+            info = repeat(result, times, exactly);
+            return null;
+        }
+
+        @Override
+        Info result() {
+            return info;
+        }
+    }
+
+    /**
+     * @return info of literal, builder is cleared
+     */
+    private static Info literal(StringBuilder literal) {
+        if (literal.length() == 0) return EMPTY;
+        String exact = literal.toString();
+        literal.setLength(0);
+        if (exact.length() <= MAX_LENGTH) return new Info(exact, exact, exact, Collections.<String>emptySet());
+        return new Info(null, head(exact), tail(exact), Collections.singleton(head(exact)));
+    }
+
+    private static Info concat(Info first, Info second) {
+        if (second == EMPTY) return first;
+        if (first == EMPTY) return second;
+        if (first.exact != null && second.exact != null) {
+            String exact = first.exact + second.exact;
+            if (exact.length() <= MAX_LENGTH) return new Info(exact, exact, exact, Collections.<String>emptySet());
+            return new Info(null, head(exact), tail(exact), Collections.singleton(head(exact)));
+        }
+        Set<String> required = new HashSet<String>(first.required);
+        required.addAll(second.required);
+        //end of the first node and start of the second one are adjacent in every match
+        required.add(head(first.suffix + second.prefix));
+        String prefix = first.exact != null ? head(first.exact + second.prefix) : first.prefix;
+        String suffix = second.exact != null ? tail(first.suffix + second.exact) : second.suffix;
+        return new Info(null, prefix, suffix, limit(required));
+    }
+
+    private static Set<String> limit(Set<String> literals) {
+        if (literals.size() <= MAX_KNOWN) return literals;
+        return new HashSet<String>(longestFirst(literals).subList(0, MAX_KNOWN));
+    }
+
+    private static List<String> longestFirst(Set<String> literals) {
+        List<String> sorted = new ArrayList<String>(literals);
+        Collections.sort(sorted, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return b.length() - a.length();
+            }
+        });
+        return sorted;
+    }
+
+    private static String head(String literal) {
+        return literal.length() <= MAX_LENGTH ? literal : literal.substring(0, MAX_LENGTH);
+    }
+
+    private static String tail(String literal) {
+        return literal.length() <= MAX_LENGTH ? literal : literal.substring(literal.length() - MAX_LENGTH);
+    }
+
+    private static Info repeat(Info term, int times, boolean exactly) {
+        if (times == 0) return exactly ? EMPTY : UNKNOWN;
+        //literals are at most MAX_LENGTH long, so further repetitions do not change the result
+        int n = Math.min(times, MAX_LENGTH + 1);
+        Info result = term;
+        for (int i = 1; i < n; i++) {
+            result = concat(result, term);
+        }
+        if (exactly || result.exact == null) return result;
+        //more repetitions may follow, so only the start of match is known
+        return new Info(null, result.prefix, term.suffix, result.all());
+    }
+
+    private static String commonPrefix(String a, String b) {
+        int n = 0;
+        while (n < a.length() && n < b.length() && a.charAt(n) == b.charAt(n)) {
+            n++;
+        }
+        return a.substring(0, n);
+    }
+
+    private static String commonSuffix(String a, String b) {
+        int n = 0;
+        while (n < a.length() && n < b.length() && a.charAt(a.length() - 1 - n) == b.charAt(b.length() - 1 - n)) {
+            n++;
+        }
+        return a.substring(a.length() - n);
+    }
+
+    /**
+     * What is known about strings matched by node
+     */
+    static final class Info {
+        /** String which node always matches or null */
+        final String exact;
+        /** Literal which every match of node starts with */
+        final String prefix;
+        /** Literal which every match of node ends with */
+        final String suffix;
+        /** Literals which every match of node contains */
+        final Set<String> required;
+
+        Info(String exact, String prefix, String suffix, Set<String> required) {
+            this.exact = exact;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.required = required;
+        }
+
+        /**
+         * @return all literals known to be contained in every match
+         */
+        Set<String> all() {
+            Set<String> all = new HashSet<String>(required);
+            all.add(prefix);
+            all.add(suffix);
+            if (exact != null) all.add(exact);
+            return all;
+        }
+    }
+}
@@ -4,27 +4,52 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * AST node for sequence of characters
+ * AST node for sequence of characters: root of pattern or group
  */
 final class SequenceNode implements AST {
 
     private final Token token;
     private final List<AST> children = new ArrayList<AST>();
     private final boolean root;
+    /** Number of capturing group, groups are numbered from 1 by their opening parenthesis, 0 if node is not a group */
+    private final int group;
+    /** Number of capturing groups in pattern, known for root only */
+    private int groupCount;
 
     SequenceNode(Token token) {
         this(token, false);
     }
 
     SequenceNode(Token token, boolean root) {
+        this(token, root, 0);
+    }
+
+    SequenceNode(Token token, int group) {
+        this(token, false, group);
+    }
+
+    private SequenceNode(Token token, boolean root, int group) {
         this.token = token;
         this.root  = root;
+        this.group = group;
     }
 
     boolean isRoot() {
         return root;
     }
 
+    int group() {
+        return group;
+    }
+
+    int groupCount() {
+        return groupCount;
+    }
+
+    void setGroupCount(int groupCount) {
+        this.groupCount = groupCount;
+    }
+
     @Override
     public Token token() {
         return token;
@@ -0,0 +1,51 @@
+package nd.regex;
+
+/**
+ * Set of integers from 0 to capacity - 1 (Briggs and Torczon sparse set).
+ * Add, contains and clear take constant time, elements are iterated in order of addition
+ * with {@link #get(int)} from 0 to {@link #size()} - 1. Nothing is allocated after creation.
+ */
+final class SparseSet {
+
+    private final int[] dense;
+    private final int[] sparse;
+    private int size = 0;
+
+    SparseSet(int capacity) {
+        dense = new int[capacity];
+        sparse = new int[capacity];
+    }
+
+    /**
+     * Add element to set
+     * @param i element
+     * @return true if element was added, false if it is already in set
+     */
+    boolean add(int i) {
+        if (contains(i)) return false;
+        dense[size] = i;
+        sparse[i] = size++;
+        return true;
+    }
+
+    boolean contains(int i) {
+        int index = sparse[i];
+        return index < size && dense[index] == i;
+    }
+
+    int get(int index) {
+        return dense[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,103 @@
+package nd.regex;
+
+/**
+ * Matcher of input which arrives in chunks.
+ * Chunks are fed one by one with {@code feed} methods, {@link #finish()} tells if the whole input matches pattern.
+ * Only current state of automaton is kept between chunks, so memory does not depend on length of input.
+ * Anchors do not need neighbouring characters: {@code ^} is resolved in the start state
+ * and {@code $} is kept pending in every state until input ends.
+ * <p>
+ * Matcher is created with {@link Pattern#streamMatcher()}. It is not thread-safe, but can be reused
+ * for the next input after {@link #reset()}. Unlike {@link Pattern#matches(CharSequence)} it never falls back to NFA:
+ * if lazily built DFA reaches memory limit, it is flushed as often as needed.
+ */
+public final class StreamMatcher {
+
+    private final DFA dfa;
+    private final LazyDFA lazyDFA;
+    private int state;
+    private boolean finished;
+
+    StreamMatcher(Program program, DFA dfa) {
+        this(program, dfa, Pattern.DFA_MEMORY_LIMIT);
+    }
+
+    StreamMatcher(Program program, DFA dfa, long memoryLimit) {
+        this.dfa = dfa;
+        this.lazyDFA = dfa == null ? new LazyDFA(program, memoryLimit) : null;
+        reset();
+    }
+
+    /**
+     * Feed the next chunk of input
+     * @param chunk characters
+     * @return false if input can not match pattern whatever characters follow
+     * @throws IllegalStateException if input is already finished
+     */
+    public boolean feed(CharSequence chunk) {
+        if (chunk == null) throw new IllegalArgumentException("chunk = null");
+        checkNotFinished();
+        int length = chunk.length();
+        if (dfa != null) {
+            for (int i = 0; i < length && !dfa.isDead(state); i++) {
+                state = dfa.next(state, chunk.charAt(i));
+            }
+            return !dfa.isDead(state);
+        }
+        for (int i = 0; i < length && !lazyDFA.isDead(state); i++) {
+            state = lazyDFA.next(state, chunk.charAt(i));
+        }
+        return !lazyDFA.isDead(state);
+    }
+
+    /**
+     * Feed the next chunk of input
+     * @param chunk array with characters
+     * @param offset index of the first character of chunk in array
+     * @param length number of characters
+     * @return false if input can not match pattern whatever characters follow
+     * @throws IllegalStateException if input is already finished
+     */
+    public boolean feed(char[] chunk, int offset, int length) {
+        if (chunk == null) throw new IllegalArgumentException("chunk = null");
+        if (offset < 0 || length < 0 || offset + length > chunk.length) {
+            throw new IndexOutOfBoundsException(String.format("offset = %s, length = %s, array length = %s",
+                    offset, length, chunk.length));
+        }
+        checkNotFinished();
+        int end = offset + length;
+        if (dfa != null) {
+            for (int i = offset; i < end && !dfa.isDead(state); i++) {
+                state = dfa.next(state, chunk[i]);
+            }
+            return !dfa.isDead(state);
+        }
+        for (int i = offset; i < end && !lazyDFA.isDead(state); i++) {
+            state = lazyDFA.next(state, chunk[i]);
+        }
+        return !lazyDFA.isDead(state);
+    }
+
+    /**
+     * End input
+     * @return true if the whole input matches pattern
+     * @throws IllegalStateException if input is already finished
+     */
+    public boolean finish() {
+        checkNotFinished();
+        finished = true;
+        return dfa != null ? dfa.accepts(state) : lazyDFA.accepts(state);
+    }
+
+    /**
+     * Start new input
+     */
+    public void reset() {
+        state = dfa != null ? dfa.start() : lazyDFA.start();
+        finished = false;
+    }
+
+    private void checkNotFinished() {
+        if (finished) throw new IllegalStateException("Input is finished, reset matcher to start new one");
+    }
+}
@@ -0,0 +1,68 @@
+package nd.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computation of result of AST node which needs results of its child nodes.
+ * Visitors compute nodes with children by tasks instead of visiting children recursively:
+ * task requests results of children one by one and {@link #run(AST, ASTVisitor)} computes them
+ * with explicit stack, so deeply nested groups do not overflow call stack.
+ * @param <R> type of result
+ */
+abstract class Task<R> {
+
+    /**
+     * Continue task
+     * @param result result of child requested by the previous call, null on the first call
+     * @return next child to compute or null if task is done
+     */
+    abstract AST next(R result);
+
+    /**
+     * @return result of done task
+     */
+    abstract R result();
+
+    /**
+     * @param result result of node
+     * @return task which is already done, for nodes without children
+     */
+    static <R> Task<R> done(final R result) {
+        return new Task<R>() {
+            @Override
+            AST next(R ignored) {
+                return null;
+            }
+
+            @Override
+            R result() {
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Compute result of node, tasks of nodes are created by visitor when their results are requested
+     * @param ast node
+     * @param visitor visitor which creates tasks
+     * @return result of node
+     */
+    static <R> R run(AST ast, ASTVisitor<Task<R>> visitor) {
+        List<Task<R>> stack = new ArrayList<Task<R>>();
+        Task<R> task = ast.visit(visitor);
+        R result = null;
+        while (true) {
+            AST child = task.next(result);
+            if (child != null) {
+                stack.add(task);
+                task = child.visit(visitor);
+                result = null;
+            } else {
+                result = task.result();
+                if (stack.isEmpty()) return result;
+                task = stack.remove(stack.size() - 1);
+            }
+        }
+    }
+}
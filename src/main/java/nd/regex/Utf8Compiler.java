@@ -0,0 +1,228 @@
+package nd.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static nd.regex.Program.*;
+
+/**
+ * UTF-8 compiler.
+ * Translate character program to program over bytes: every instruction which consumes character
+ * is replaced with automaton which consumes UTF-8 encoding of the same characters, so UTF-8 input
+ * is matched without decoding it. Bytes are represented as characters from 0 to 255.
+ * <p>
+ * Range of code points is split to subranges whose encodings have the same length and differ only
+ * in trailing bytes which take all possible values, so every subrange is a sequence of byte ranges.
+ * Sequences are merged to a trie by their leading byte ranges.
+ * <p>
+ * Surrogates have no encoding and are dropped from classes. Instruction which accepts every surrogate,
+ * like {@code .} or negated class, accepts every supplementary character, so it is matched as one character.
+ */
+final class Utf8Compiler {
+
+    private static final int MAX_ONE_BYTE = 0x7F;
+    private static final int MAX_TWO_BYTES = 0x7FF;
+    private static final int MAX_THREE_BYTES = 0xFFFF;
+
+    private final Program program;
+    private int[] op;
+    private int[] arg;
+    private int[] next;
+    private int[] alt;
+    private int size;
+    private final List<CharClass> classes = new ArrayList<CharClass>();
+    private final Map<CharClass, Integer> classIndex = new HashMap<CharClass, Integer>();
+
+    private Utf8Compiler(Program program) {
+        this.program = program;
+        this.size = program.size();
+        this.op = Arrays.copyOf(program.op, Math.max(16, 2 * size));
+        this.arg = Arrays.copyOf(program.arg, op.length);
+        this.next = Arrays.copyOf(program.next, op.length);
+        this.alt = Arrays.copyOf(program.alt, op.length);
+    }
+
+    /**
+     * Compile program to match UTF-8 bytes. Instructions which consume nothing keep their numbers.
+     * @param program character program
+     * @return byte program
+     */
+    static Program compile(Program program) {
+        return new Utf8Compiler(program).compile();
+    }
+
+    private Program compile() {
+        for (int pc = 0; pc < program.size(); pc++) {
+            int[] ranges;
+            switch (program.op[pc]) {
+                case CHAR:  ranges = new int[] {program.arg[pc], program.arg[pc]}; break;
+                case ANY:   ranges = CharClass.ANY.ranges(); break;
+                case CLASS: ranges = program.classes[program.arg[pc]].ranges(); break;
+                default:    continue;
+            }
+            List<int[]> sequences = sequences(ranges);
+            if (sequences.isEmpty()) {
+                op[pc] = CLASS;
+                arg[pc] = classIndex(CharClass.EMPTY);
+            } else {
+                trie(pc, sequences, 0, sequences.size(), 0, program.next[pc]);
+            }
+        }
+        return new Program(Arrays.copyOf(op, size), Arrays.copyOf(arg, size), Arrays.copyOf(next, size),
+                Arrays.copyOf(alt, size), classes.toArray(new CharClass[classes.size()]), program.start,
+                program.groups, new String[0], new String[0]);
+    }
+
+    /**
+     * Encode character ranges
+     * @param ranges sorted disjoint intervals of characters: low0, high0, low1, high1, ...
+     * @return byte range sequences in order of code points: low0, high0, low1, high1, ... for every byte
+     */
+    static List<int[]> sequences(int[] ranges) {
+        List<int[]> sequences = new ArrayList<int[]>();
+        int surrogates = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            int low = ranges[i];
+            int high = ranges[i + 1];
+            surrogates += Math.max(0, Math.min(high, Character.MAX_LOW_SURROGATE)
+                    - Math.max(low, Character.MIN_HIGH_SURROGATE) + 1);
+            if (low < Character.MIN_HIGH_SURROGATE) {
+                split(low, Math.min(high, Character.MIN_HIGH_SURROGATE - 1), sequences);
+            }
+            if (high > Character.MAX_LOW_SURROGATE) {
+                split(Math.max(low, Character.MAX_LOW_SURROGATE + 1), high, sequences);
+            }
+        }
+        if (surrogates == Character.MAX_LOW_SURROGATE - Character.MIN_HIGH_SURROGATE + 1) {
+            split(Character.MIN_SUPPLEMENTARY_CODE_POINT, Character.MAX_CODE_POINT, sequences);
+        }
+        return sequences;
+    }
+
+    /**
+     * Split range of code points without surrogates to ranges encoded by sequences of byte ranges
+     */
+    private static void split(int low, int high, List<int[]> sequences) {
+        if (low > high) return;
+        for (int max : new int[] {MAX_ONE_BYTE, MAX_TWO_BYTES, MAX_THREE_BYTES}) {
+            if (low <= max && max < high) {
+                split(low, max, sequences);
+                split(max + 1, high, sequences);
+                return;
+            }
+        }
+        int length = length(low);
+        for (int i = 1; i < length; i++) {
+            //code points which differ only in i trailing bytes
+            int mask = (1 << (6 * i)) - 1;
+            if ((low & ~mask) == (high & ~mask)) continue;
+            if ((low & mask) != 0) {
+                split(low, low | mask, sequences);
+                split((low | mask) + 1, high, sequences);
+                return;
+            }
+            if ((high & mask) != mask) {
+                split(low, (high & ~mask) - 1, sequences);
+                split(high & ~mask, high, sequences);
+                return;
+            }
+        }
+        int[] lowBytes = encode(low, length);
+        int[] highBytes = encode(high, length);
+        int[] sequence = new int[2 * length];
+        for (int i = 0; i < length; i++) {
+            sequence[2 * i] = lowBytes[i];
+            sequence[2 * i + 1] = highBytes[i];
+        }
+        sequences.add(sequence);
+    }
+
+    private static int length(int codePoint) {
+        if (codePoint <= MAX_ONE_BYTE) return 1;
+        if (codePoint <= MAX_TWO_BYTES) return 2;
+        if (codePoint <= MAX_THREE_BYTES) return 3;
+        return 4;
+    }
+
+    private static int[] encode(int codePoint, int length) {
+        switch (length) {
+            case 1:  return new int[] {codePoint};
+            case 2:  return new int[] {0xC0 | codePoint >> 6, 0x80 | codePoint & 0x3F};
+            case 3:  return new int[] {0xE0 | codePoint >> 12, 0x80 | codePoint >> 6 & 0x3F, 0x80 | codePoint & 0x3F};
+            default: return new int[] {0xF0 | codePoint >> 18, 0x80 | codePoint >> 12 & 0x3F,
+                    0x80 | codePoint >> 6 & 0x3F, 0x80 | codePoint & 0x3F};
+        }
+    }
+
+    /**
+     * Compile sequences to trie whose leaves continue with target
+     * @param pc instruction to compile the root of trie to
+     * @param from index of the first sequence
+     * @param to index after the last sequence
+     * @param depth number of bytes of sequences consumed before pc
+     */
+    private void trie(int pc, List<int[]> sequences, int from, int to, int depth, int target) {
+        while (true) {
+            //sequences with the same leading ranges are adjacent
+            int[] first = sequences.get(from);
+            int end = from + 1;
+            while (end < to && sequences.get(end)[2 * depth] == first[2 * depth]
+                    && sequences.get(end)[2 * depth + 1] == first[2 * depth + 1]) {
+                end++;
+            }
+            int branch = pc;
+            if (end < to) {
+                op[pc] = SPLIT;
+                branch = emit();
+                int rest = emit();
+                next[pc] = branch;
+                alt[pc] = rest;
+                pc = rest;
+            }
+            byteRange(branch, first[2 * depth], first[2 * depth + 1]);
+            if (first.length == 2 * depth + 2) {
+                next[branch] = target;
+            } else {
+                int child = emit();
+                next[branch] = child;
+                trie(child, sequences, from, end, depth + 1, target);
+            }
+            if (end == to) return;
+            from = end;
+        }
+    }
+
+    private void byteRange(int pc, int low, int high) {
+        if (low == high) {
+            op[pc] = CHAR;
+            arg[pc] = low;
+        } else {
+            op[pc] = CLASS;
+            arg[pc] = classIndex(CharClass.of(low, high));
+        }
+    }
+
+    private int classIndex(CharClass charClass) {
+        Integer index = classIndex.get(charClass);
+        if (index == null) {
+            index = classes.size();
+            classes.add(charClass);
+            classIndex.put(charClass, index);
+        }
+        return index;
+    }
+
+    private int emit() {
+        if (size == op.length) {
+            int capacity = size * 2;
+            op = Arrays.copyOf(op, capacity);
+            arg = Arrays.copyOf(arg, capacity);
+            next = Arrays.copyOf(next, capacity);
+            alt = Arrays.copyOf(alt, capacity);
+        }
+        return size++;
+    }
+}
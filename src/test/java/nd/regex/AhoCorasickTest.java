@@ -0,0 +1,50 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+/**
+ *
+ */
+public class AhoCorasickTest extends TestCase {
+
+    public void test_single_literal() {
+        AhoCorasick automaton = new AhoCorasick("abc");
+        assertEquals(3, automaton.indexIn("xyzabcabc", 0));
+        assertEquals(6, automaton.indexIn("xyzabcabc", 4));
+        assertEquals(-1, automaton.indexIn("xyzab", 0));
+    }
+
+    public void test_several_literals() {
+        AhoCorasick automaton = new AhoCorasick("he", "she", "his", "hers");
+        assertEquals(1, automaton.indexIn("ushers", 0));
+        assertEquals(2, automaton.indexIn("ushers", 2));
+        assertEquals(-1, automaton.indexIn("ushers", 3));
+        assertEquals(4, automaton.indexIn("xxx his", 0));
+        assertEquals(-1, automaton.indexIn("", 0));
+    }
+
+    public void test_leftmost_start_is_found() {
+        //"c" ends first, but "abcd" starts earlier
+        AhoCorasick automaton = new AhoCorasick("abcd", "c");
+        assertEquals(0, automaton.indexIn("abcd", 0));
+        assertEquals(2, automaton.indexIn("abce", 0));
+        assertEquals(2, automaton.indexIn("abcd", 1));
+    }
+
+    public void test_failure_links() {
+        AhoCorasick automaton = new AhoCorasick("aab", "ab", "bc");
+        assertEquals(1, automaton.indexIn("aaab", 0));
+        assertEquals(3, automaton.indexIn("xaxbc", 0));
+        assertEquals(7, new AhoCorasick("abcabd", "bcabe").indexIn("xxxxabcabcabd", 0));
+    }
+
+    public void test_many_keywords() {
+        String[] keywords = new String[500];
+        for (int i = 0; i < keywords.length; i++) {
+            keywords[i] = "key" + i + ";";
+        }
+        AhoCorasick automaton = new AhoCorasick(keywords);
+        assertEquals(6, automaton.indexIn("key5x key499; key1;", 0));
+        assertEquals(-1, automaton.indexIn("key500; key", 0));
+    }
+}
@@ -0,0 +1,72 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+/**
+ *
+ */
+public class AlphabetTest extends TestCase {
+
+    public void test_characters() {
+        Alphabet alphabet = alphabet("abca");
+        assertEquals(4, alphabet.size());
+        assertFalse(alphabet.classOf('a') == alphabet.classOf('b'));
+        assertFalse(alphabet.classOf('b') == alphabet.classOf('c'));
+        assertEquals(alphabet.classOf('d'), alphabet.classOf('\u0100'));
+        assertEquals(alphabet.classOf('d'), alphabet.classOf((char) 0));
+    }
+
+    public void test_equal_intervals_are_merged() {
+        //[a-c] and [x-z] are not distinguished by any instruction
+        Alphabet alphabet = alphabet("[a-cx-z]+[0-9]");
+        assertEquals(3, alphabet.size());
+        assertEquals(alphabet.classOf('a'), alphabet.classOf('z'));
+        assertEquals(alphabet.classOf('0'), alphabet.classOf('9'));
+        assertEquals(alphabet.classOf('d'), alphabet.classOf('/'));
+    }
+
+    public void test_overlapping_classes() {
+        Alphabet alphabet = alphabet("[a-m][h-z]");
+        assertEquals(4, alphabet.size());
+        assertEquals(alphabet.classOf('h'), alphabet.classOf('m'));
+        assertFalse(alphabet.classOf('g') == alphabet.classOf('h'));
+        assertFalse(alphabet.classOf('m') == alphabet.classOf('n'));
+    }
+
+    public void test_line_start_does_not_separate_zero() {
+        Alphabet alphabet = alphabet("a^");
+        assertEquals(2, alphabet.size());
+        assertEquals(alphabet.classOf((char) 0), alphabet.classOf('b'));
+    }
+
+    public void test_representatives() {
+        Alphabet alphabet = alphabet("[^a]\\d");
+        for (int cls = 0; cls < alphabet.size(); cls++) {
+            assertEquals(cls, alphabet.classOf(alphabet.representative(cls)));
+        }
+    }
+
+    public void test_many_characters() {
+        StringBuilder pattern = new StringBuilder("[^\u4E00]x");
+        for (int i = 0; i < 20000; i++) {
+            pattern.append('|').append((char) (0x4E00 + 2 * i));
+        }
+        Alphabet alphabet = alphabet(pattern.toString());
+        assertEquals(20002, alphabet.size());
+        assertEquals(alphabet.classOf('a'), alphabet.classOf((char) (0x4E00 + 1)));
+        assertFalse(alphabet.classOf((char) 0x4E00) == alphabet.classOf((char) (0x4E00 + 2)));
+        for (int cls = 0; cls < alphabet.size(); cls++) {
+            assertEquals(cls, alphabet.classOf(alphabet.representative(cls)));
+        }
+    }
+
+    public void test_blocks_are_shared() {
+        assertEquals(1, alphabet("").blockCount());
+        assertEquals(2, alphabet("ab").blockCount());
+        assertEquals(3, alphabet("a\u0100").blockCount());
+    }
+
+    private Alphabet alphabet(String pattern) {
+        return new NFABuilder().build(new ParserImpl(new LexerImpl(pattern)).parse()).alphabet;
+    }
+}
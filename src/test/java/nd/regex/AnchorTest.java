@@ -17,4 +17,10 @@ public class AnchorTest extends MatcherTestCase {
         checkWorkEqually("abc", "^(.*)$");
     }
 
+    public void test_zero_character_is_not_start_of_input() {
+        checkWorkEqually("\u0000b", "[^a]^b");
+        checkWorkEqually("\u0000", ".^");
+        checkWorkEqually("\u0000", "^\u0000$");
+    }
+
 }
@@ -0,0 +1,64 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ */
+public class BatchTest extends TestCase {
+
+    private ForkJoinPool pool;
+
+    @Override
+    protected void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @Override
+    protected void tearDown() {
+        pool.shutdown();
+    }
+
+    public void test_same_as_one_by_one() {
+        Random random = new Random(21);
+        List<String> inputs = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++) {
+            inputs.add(Integer.toString(random.nextInt(100000), 16 + random.nextInt(2)));
+        }
+        for (Pattern pattern : new Pattern[] {Matcher.compile("[0-9a-f]*f[0-9]+"), Matcher.compile("1.*", 10)}) {
+            BitSet matching = pattern.matches(inputs, pool);
+            for (int i = 0; i < inputs.size(); i++) {
+                assertEquals(inputs.get(i), pattern.matches(inputs.get(i)), matching.get(i));
+            }
+            assertTrue(matching.cardinality() > 0);
+            assertEquals(matching, pattern.matches(inputs.toArray(new String[inputs.size()]), pool));
+        }
+    }
+
+    public void test_any_list_and_char_sequences() {
+        List<CharSequence> inputs = new LinkedList<CharSequence>();
+        inputs.add("ab");
+        inputs.add(new StringBuilder("abab"));
+        inputs.add("aba");
+        inputs.add("");
+        BitSet matching = Matcher.compile("(ab)*").matches(inputs, pool);
+        assertEquals("{0, 1, 3}", matching.toString());
+        assertTrue(Matcher.compile("a").matches(new ArrayList<String>(), pool).isEmpty());
+    }
+
+    public void test_null_input() {
+        try {
+            Matcher.compile("a").matches(new String[] {"a", null}, pool);
+            fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
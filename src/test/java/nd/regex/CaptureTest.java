@@ -0,0 +1,79 @@
+package nd.regex;
+
+/**
+ *
+ */
+public class CaptureTest extends MatcherTestCase {
+
+    public void test_groups_of_whole_match() {
+        Pattern pattern = Matcher.compile("(\\d+)-(\\d+)(-(\\d+))?");
+        assertEquals(4, pattern.groupCount());
+        Match match = pattern.match("2024-10");
+        assertEquals(4, match.groupCount());
+        assertEquals("2024", match.group("2024-10", 1));
+        assertEquals("10", match.group("2024-10", 2));
+        assertNull(match.group("2024-10", 3));
+        assertEquals(-1, match.start(4));
+        assertEquals(-1, match.end(4));
+        assertEquals("7", pattern.match("1-2-7").group("1-2-7", 4));
+        assertNull(pattern.match("1-2-"));
+    }
+
+    public void test_same_groups_as_java() {
+        String[] patterns = {"(a|ab)(c|bcd)(d*)", "(a*)(a*)", "((a)|b)+", "(ab|a)+b", "(a(b)?)+",
+                "(\\w+)\\s(\\w+)", "x(a|(b))*y", "(.*)(\\d+)", "((a|b)(c|d))+", "^(a)$|(b)"};
+        String[] strings = {"abcd", "aaa", "ab", "abab", "aab", "hello world", "xabby", "abc123", "acbd", "a", "b", ""};
+        for (String pattern : patterns) {
+            Pattern compiled = Matcher.compile(pattern);
+            for (String str : strings) {
+                java.util.regex.Matcher buildIn = java.util.regex.Pattern.compile(pattern).matcher(str);
+                assertEquals(pattern + " " + str, buildIn.matches() ? match(buildIn) : null, compiled.match(str));
+                checkFindEqually(str, pattern);
+            }
+        }
+    }
+
+    public void test_groups_in_repetition_keep_the_last_iteration() {
+        Match match = Matcher.compile("((a)|(b))+").match("ab");
+        assertEquals("b", match.group("ab", 1));
+        assertEquals("a", match.group("ab", 2));
+        assertEquals("b", match.group("ab", 3));
+    }
+
+    public void test_find_reports_groups() {
+        Match match = Matcher.find("key=value; other=x", "(\\w+)=(\\w+)");
+        assertEquals("key", match.group("key=value; other=x", 1));
+        assertEquals("value", match.group("key=value; other=x", 2));
+        Match second = Matcher.findAll("key=value; other=x", "(\\w+)=(\\w+)").get(1);
+        assertEquals(11, second.start(1));
+        assertEquals(18, second.end(2));
+    }
+
+    public void test_empty_group() {
+        Match match = Matcher.compile("a()b").match("ab");
+        assertEquals(1, match.start(1));
+        assertEquals(1, match.end(1));
+    }
+
+    public void test_no_such_group() {
+        Match match = Matcher.compile("(a)").match("a");
+        assertEquals(0, match.start(0));
+        try {
+            match.start(2);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            //expected
+        }
+    }
+
+    public void test_long_input_with_groups() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.append(i % 2 == 0 ? 'a' : 'b');
+        }
+        String str = sb.toString();
+        Match match = Matcher.compile("((a|b)*)(b)").match(str);
+        assertEquals(str.length() - 1, match.end(1));
+        assertEquals(str.length() - 2, match.start(2));
+    }
+}
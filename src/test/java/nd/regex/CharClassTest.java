@@ -0,0 +1,70 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ *
+ */
+public class CharClassTest extends TestCase {
+
+    public void test_intervals_are_merged() {
+        CharClass charClass = CharClass.of('x', 'z', 'a', 'c', 'b', 'f', 'g', 'g');
+        assertTrue(Arrays.equals(new int[] {'a', 'g', 'x', 'z'}, charClass.ranges()));
+        assertTrue(charClass.contains('d'));
+        assertFalse(charClass.contains('h'));
+    }
+
+    public void test_contains_wide_characters() {
+        CharClass charClass = CharClass.of('a', 'a', 0xF0, 0x105, 0x400, 0x4FF, 0xFFFF, 0xFFFF);
+        assertTrue(charClass.contains('a'));
+        assertTrue(charClass.contains('\u00F0'));
+        assertTrue(charClass.contains('\u0100'));
+        assertTrue(charClass.contains('\u0105'));
+        assertFalse(charClass.contains('\u0106'));
+        assertTrue(charClass.contains('\u0450'));
+        assertFalse(charClass.contains('\u0500'));
+        assertTrue(charClass.contains('\uFFFF'));
+        assertFalse(charClass.contains('\uFFFE'));
+    }
+
+    public void test_class_with_many_members() {
+        StringBuilder pattern = new StringBuilder("[");
+        for (int i = 20000; i > 0; i--) {
+            pattern.append((char) (0x4E00 + 2 * i));
+        }
+        Program program = new NFABuilder().build(new ParserImpl(new LexerImpl(pattern + "]")).parse());
+        CharClass charClass = program.classes[0];
+        assertEquals(2 * 20000, charClass.ranges().length);
+        assertTrue(charClass.contains((char) (0x4E00 + 2)));
+        assertTrue(charClass.contains((char) (0x4E00 + 40000)));
+        assertFalse(charClass.contains((char) (0x4E00 + 20001)));
+        assertFalse(charClass.contains((char) 0x4E00));
+    }
+
+    public void test_complement() {
+        CharClass charClass = CharClass.of('b', 'b').complement();
+        assertTrue(Arrays.equals(new int[] {0, 'a', 'c', Character.MAX_VALUE}, charClass.ranges()));
+        assertTrue(charClass.contains('\u1234'));
+        assertFalse(charClass.contains('b'));
+        assertEquals(CharClass.of('b', 'b'), charClass.complement());
+    }
+
+    public void test_predefined_classes_are_shared() {
+        Program program = new NFABuilder().build(new ParserImpl(new LexerImpl("\\w\\d\\w[\\w]")).parse());
+        int first = program.arg[program.start];
+        int second = program.arg[program.next[program.start]];
+        assertSame(CharClass.WORD_CHARACTER, program.classes[first]);
+        assertSame(CharClass.DIGIT, program.classes[second]);
+        assertEquals(2, program.classes.length);
+    }
+
+    public void test_predefined_classes() {
+        assertTrue(CharClass.WORD_CHARACTER.contains('Q'));
+        assertTrue(CharClass.WORD_CHARACTER.contains('_'));
+        assertFalse(CharClass.NON_WORD_CHARACTER.contains('Q'));
+        assertTrue(CharClass.WHITESPACE.contains('\u000B'));
+        assertFalse(CharClass.NON_DIGIT.contains('7'));
+    }
+}
@@ -0,0 +1,117 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ *
+ */
+public class CharSequenceTest extends TestCase {
+
+    public void test_string_builder_and_char_buffer() {
+        Pattern pattern = Matcher.compile("(ab)+c");
+        assertTrue(pattern.matches(new StringBuilder("ababc")));
+        assertFalse(pattern.matches(new StringBuilder("ababx")));
+        CharBuffer buffer = CharBuffer.wrap("xxabcxx".toCharArray(), 2, 3);
+        assertTrue(pattern.matches(buffer));
+        assertTrue(Matcher.matches(new StringBuilder("abc"), "(ab)+c"));
+    }
+
+    public void test_char_array_slice() {
+        char[] chars = "--abab c--".toCharArray();
+        assertTrue(Matcher.compile("(ab)+ c").matches(chars, 2, 6));
+        assertFalse(Matcher.compile("(ab)+ c").matches(chars, 2, 7));
+        assertTrue(Matcher.compile("").matches(chars, 10, 0));
+    }
+
+    public void test_anchors_match_at_region_bounds() {
+        Pattern pattern = Matcher.compile("^b+$");
+        assertTrue(pattern.matches("abba", 1, 3));
+        assertTrue(pattern.matches(new StringBuilder("abba"), 1, 3));
+        assertFalse(pattern.matches("abba", 0, 3));
+        assertTrue(Matcher.compile("^$").matches("abc", 1, 1));
+    }
+
+    public void test_required_literals_inside_region() {
+        Pattern pattern = Matcher.compile(".*timeout.*");
+        assertTrue(pattern.matches("timeout", 0, 7));
+        assertFalse(pattern.matches("timeout", 0, 6));
+        assertFalse(pattern.matches(new StringBuilder("timeout"), 1, 7));
+        assertTrue(pattern.matches(new StringBuilder("a timeout"), 1, 9));
+    }
+
+    public void test_short_region_of_large_buffer() {
+        final char[] chars = new char[1 << 20];
+        Arrays.fill(chars, 'x');
+        "timeout".getChars(0, 7, chars, 100);
+        "timeout".getChars(0, 7, chars, chars.length - 7);
+        final int[] reads = new int[1];
+        CharSequence counting = new CharSequence() {
+            @Override
+            public int length() {
+                return chars.length;
+            }
+
+            @Override
+            public char charAt(int index) {
+                reads[0]++;
+                return chars[index];
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return new String(chars, start, end - start);
+            }
+        };
+        Pattern pattern = Matcher.compile(".*timeout.*");
+        assertTrue(pattern.matches(counting, 90, 110));
+        assertFalse(pattern.matches(counting, 10, 30));
+        assertTrue("Read " + reads[0] + " characters", reads[0] < 200);
+        String str = new String(chars);
+        assertFalse(pattern.matches(str, 10, 30));
+        assertTrue(pattern.matches(str, 100, 107));
+    }
+
+    public void test_every_engine() {
+        Pattern lazy = Matcher.compile("[a-c]*d");
+        Pattern dfa = Matcher.compile("[a-c]*d", 100);
+        assertEquals(Pattern.Engine.DFA, dfa.engine());
+        for (Pattern pattern : new Pattern[] {lazy, dfa}) {
+            assertTrue(pattern.matches(new StringBuilder("xabcdx"), 1, 5));
+            assertFalse(pattern.matches(new StringBuilder("xabcdx"), 1, 6));
+        }
+        NFA nfa = new NFA(new NFABuilder().build(new ParserImpl(new LexerImpl("[a-c]*d")).parse()));
+        assertTrue(nfa.emulate(new StringBuilder("xabcdx"), 1, 5));
+        assertFalse(nfa.emulate(new StringBuilder("xabcdx"), 0, 5));
+    }
+
+    public void test_regex_set() {
+        RegexSet set = Matcher.compileSet("a+", "a*b", ".*");
+        assertEquals("[0, 2]", Arrays.toString(set.matches(new StringBuilder("aaa"))));
+        assertTrue(set.matchesAny(CharBuffer.wrap("b")));
+    }
+
+    public void test_bounds() {
+        Pattern pattern = Matcher.compile("a");
+        try {
+            pattern.matches("abc", 2, 1);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            //expected
+        }
+        try {
+            pattern.matches("abc".toCharArray(), 1, 3);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+            //expected
+        }
+        try {
+            pattern.matches((char[]) null, 0, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+import static nd.regex.Program.*;
+
+/**
+ *
+ */
+public class ClosuresTest extends TestCase {
+
+    public void test_alternatives_in_priority_order() {
+        Program program = build("a|b|c");
+        Closures closures = program.closures();
+        assertEquals("abc", targets(program, closures, program.start));
+    }
+
+    public void test_loop() {
+        Program program = build("(a|b)*c");
+        Closures closures = program.closures();
+        int a = find(program, 'a');
+        //after a: save end of group, then next iteration or c
+        assertEquals("abc", targets(program, closures, program.next[a]));
+        int entry = closures.from(program.next[a]);
+        assertTrue(Arrays.equals(new int[] {3, 2}, closures.saves(entry)));
+    }
+
+    public void test_stops_at_condition() {
+        Program program = build("a?^b|c{2,3}");
+        Closures closures = program.closures();
+        int count = 0;
+        for (int entry = closures.from(program.start); entry < closures.to(program.start); entry++) {
+            int op = program.op[closures.target(entry)];
+            assertTrue(op == CHAR || op == LINE_START || op == COUNT);
+            if (op != CHAR) count++;
+        }
+        assertEquals(2, count);
+    }
+
+    public void test_match_is_target() {
+        Program program = build("a*");
+        Closures closures = program.closures();
+        int entry = closures.to(program.start) - 1;
+        assertEquals(MATCH, program.op[closures.target(entry)]);
+        assertNull(closures.saves(entry));
+    }
+
+    private static String targets(Program program, Closures closures, int pc) {
+        assertTrue(closures.computed(pc));
+        StringBuilder sb = new StringBuilder();
+        for (int entry = closures.from(pc); entry < closures.to(pc); entry++) {
+            int target = closures.target(entry);
+            if (program.op[target] == CHAR) sb.append((char) program.arg[target]);
+        }
+        return sb.toString();
+    }
+
+    private static int find(Program program, char c) {
+        for (int pc = 0; pc < program.size(); pc++) {
+            if (program.op[pc] == CHAR && program.arg[pc] == c) return pc;
+        }
+        throw new AssertionError(c);
+    }
+
+    private static Program build(String pattern) {
+        return new NFABuilder().build(new ParserImpl(new LexerImpl(pattern)).parse());
+    }
+}
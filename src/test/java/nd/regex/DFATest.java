@@ -0,0 +1,63 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ *
+ */
+public class DFATest extends TestCase {
+
+    public void test_matches_like_nfa() {
+        String[] patterns = {"abc", "a*b+c?", "(ab|cd)*", "[^a-c]x{2,3}", "^a.c$", "a$b", "a^b", "", "\u0100+",
+                "(a|b)*a(a|b)", "\\d{3}-\\d{2}", "[abc\\d]*"};
+        Random random = new Random(0);
+        for (String pattern : patterns) {
+            Program program = build(pattern);
+            DFA dfa = DFA.build(program, 1000);
+            NFA nfa = new NFA(program);
+            for (int i = 0; i < 200; i++) {
+                StringBuilder sb = new StringBuilder();
+                int length = random.nextInt(8);
+                for (int j = 0; j < length; j++) {
+                    sb.append("abcdx1-\u0100".charAt(random.nextInt(8)));
+                }
+                String str = sb.toString();
+                assertEquals(pattern + " " + str, nfa.emulate(str), dfa.matches(str));
+            }
+        }
+    }
+
+    public void test_minimization() {
+        //(a|b)*a(a|b) needs 4 states and dead state for other characters
+        assertEquals(5, DFA.build(build("(a|b)*a(a|b)"), 1000).stateCount());
+        assertEquals(DFA.build(build("a+"), 1000).stateCount(), DFA.build(build("aa*|a"), 1000).stateCount());
+    }
+
+    public void test_alphabet_classes() {
+        DFA dfa = DFA.build(build("[a-z]+[0-9]"), 1000);
+        //digits, letters and all other characters
+        assertEquals(3, dfa.classCount());
+    }
+
+    public void test_state_limit() {
+        assertNull(DFA.build(build("(a|b)*a(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)"), 100));
+        assertNotNull(DFA.build(build("(a|b)*a(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)"), 1000));
+    }
+
+    public void test_engine() {
+        assertEquals(Pattern.Engine.LAZY_DFA, Matcher.compile("a+b").engine());
+        Pattern pattern = Matcher.compile("a+b", 100);
+        assertEquals(Pattern.Engine.DFA, pattern.engine());
+        assertTrue(pattern.matches("aab"));
+        assertFalse(pattern.matches("aa"));
+        Pattern large = Matcher.compile("(a|b)*a(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)", 100);
+        assertEquals(Pattern.Engine.LAZY_DFA, large.engine());
+        assertTrue(large.matches("babbbbbbb"));
+    }
+
+    private Program build(String pattern) {
+        return new NFABuilder().build(new ParserImpl(new LexerImpl(pattern)).parse());
+    }
+}
@@ -0,0 +1,89 @@
+package nd.regex;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ *
+ */
+public class FindTest extends MatcherTestCase {
+
+    public void test_literal() {
+        checkFindEqually("abcabc", "bc");
+        checkFindEqually("abcabc", "x");
+        checkFindEqually("aaa", "a");
+        checkFindEqually("", "a");
+    }
+
+    public void test_leftmost_first() {
+        checkFindEqually("xabcx", "a|ab|abc");
+        checkFindEqually("xabcx", "(abc|ab)c?");
+        checkFindEqually("aaaa", "a+");
+        checkFindEqually("aaaa", "a{1,3}");
+        checkFindEqually("abab", "(ab)*");
+        checkFindEqually("xyz", "y?");
+    }
+
+    public void test_empty_matches() {
+        checkFindEqually("baaab", "a*");
+        checkFindEqually("abc", "");
+        checkFindEqually("", "");
+        checkFindEqually("", "a*");
+    }
+
+    public void test_anchors() {
+        checkFindEqually("abcabc", "^abc");
+        checkFindEqually("abcabc", "abc$");
+        checkFindEqually("abc", "^");
+        checkFindEqually("abc", "$");
+        checkFindEqually("abc", "b$");
+    }
+
+    public void test_classes() {
+        checkFindEqually("id=42, count=7", "[a-z]+=\\d+");
+        checkFindEqually("a1 b22 c333", "\\w\\d{2,}");
+        checkFindEqually("x . y", "\\s\\S\\s");
+    }
+
+    public void test_literal_prefix() {
+        checkFindEqually("INFO 1 ERROR 2 ERROR x ERROR 33", "ERROR \\d+");
+        checkFindEqually("GET /api/users GET /api/ GET /api/x1", "GET /api/[a-z]+");
+        checkFindEqually("abababc", "(ab){2}c");
+        checkFindEqually("abcabc", "^abc");
+        checkFindEqually("no match here", "ERROR");
+        checkFindEqually("user=root pass=x; user=admin", "(user|pass|key)=[a-z]+");
+        checkFindEqually("abcd abce", "(abcd|c)");
+    }
+
+    public void test_find_from() {
+        Pattern pattern = Matcher.compile("ab");
+        assertEquals(new Match(3, 5), pattern.find("abcab", 1));
+        assertEquals(new Match(3, 5), pattern.find("abcab", 3));
+        assertNull(pattern.find("abcab", 4));
+        assertNull(pattern.find("abcab", 5));
+        try {
+            pattern.find("abcab", 6);
+            fail("Start after end of string");
+        } catch (IndexOutOfBoundsException e) {
+            //expected
+        }
+    }
+
+    public void test_static_methods() {
+        assertEquals("42", Matcher.find("id=42", "\\d+").group("id=42"));
+        assertNull(Matcher.find("id", "\\d+"));
+        assertEquals(Arrays.asList(new Match(0, 1), new Match(2, 3)), Matcher.findAll("1a2", "\\d"));
+        assertEquals(Collections.emptyList(), Matcher.findAll("abc", "\\d"));
+    }
+
+    public void test_long_line_is_searched_in_linear_time() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.append('a');
+        }
+        //backtracking engine needs quadratic time to find nothing here
+        assertNull(Matcher.compile("a*a*a*a*a*b").find(sb.toString()));
+        assertEquals(Arrays.asList(new Match(0, 100000), new Match(100000, 100000)),
+                Matcher.compile("a*").findAll(sb.toString()));
+    }
+}
@@ -0,0 +1,141 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ */
+public class GrepTest extends TestCase {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("grep", ".log");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void test_lines_and_offsets() throws IOException {
+        write("INFO start\nERROR 42 failed\nINFO ok\nERROR x\nERROR 7".getBytes(UTF_8));
+        List<String> lines = grep("ERROR \\d+", UTF_8, Grep.WINDOW);
+        assertEquals(Arrays.asList("2:11:15", "5:43:7"), lines);
+    }
+
+    public void test_anchors_match_at_line_bounds() throws IOException {
+        write("ab\nxab\nabx\n\nab".getBytes(UTF_8));
+        assertEquals(Arrays.asList("1:0:2", "3:7:3", "5:12:2"), grep("^ab", UTF_8, Grep.WINDOW));
+        assertEquals(Arrays.asList("1:0:2", "2:3:3", "5:12:2"), grep("ab$", UTF_8, Grep.WINDOW));
+        assertEquals(Arrays.asList("4:11:0"), grep("^$", UTF_8, Grep.WINDOW));
+    }
+
+    public void test_crlf() throws IOException {
+        write("ab\r\nxab\r\na\rb\r\n\r\nab\r".getBytes(UTF_8));
+        for (long window = 1; window < 8; window++) {
+            assertEquals(Arrays.asList("1:0:2", "2:4:3", "5:16:2"), grep("ab$", UTF_8, window));
+            assertEquals(Arrays.asList("3:9:3"), grep("^a\rb$", UTF_8, window));
+            assertEquals(Arrays.asList("4:14:0"), grep("^$", UTF_8, window));
+        }
+    }
+
+    public void test_lines_without_required_literal_are_skipped() throws IOException {
+        write("timeout db\nerror db\ntimeout\n\u0442\u0430\u0439\u043C\u0430\u0443\u0442 x\nxx".getBytes(UTF_8));
+        for (long window = 1; window < 40; window += 3) {
+            assertEquals(Arrays.asList("1:0:10"), grep(".*timeout.*(db|cache)", UTF_8, window));
+            assertEquals(Arrays.asList("4:28:16"), grep("\u0430\u0439\u043C.* x", UTF_8, window));
+            assertEquals(Arrays.asList("2:11:8", "5:45:2"), grep("(error|xx)", UTF_8, window));
+        }
+    }
+
+    public void test_lines_cross_windows() throws IOException {
+        write("aaaaaaaaaaaaaaaab\nab\nbbbbbbbbbbbbbbbbbbbbbbba\n".getBytes(UTF_8));
+        for (long window = 1; window < 10; window++) {
+            assertEquals(Arrays.asList("1:0:17", "2:18:2"), grep("a+b", UTF_8, window));
+        }
+    }
+
+    public void test_utf8() throws IOException {
+        String text = "caf\u00E9\n\u0430\u0431\u0432\n\uD83D\uDE00 smile\nplain";
+        write(text.getBytes(UTF_8));
+        for (long window = 1; window < 6; window++) {
+            assertEquals(Arrays.asList("1:0:5"), grep("caf[\u00E0-\u00FF]", UTF_8, window));
+            assertEquals(Arrays.asList("2:6:6"), grep("^\u0431?\u0430\u0431+\u0432$", UTF_8, window));
+            assertEquals(Arrays.asList("3:13:10"), grep("\uD83D\uDE00 s", UTF_8, window));
+        }
+    }
+
+    public void test_malformed_utf8() throws IOException {
+        write(new byte[] {'a', (byte) 0xC3, 'b', '\n', (byte) 0x80, 'c', '\n', 'x', (byte) 0xE2, (byte) 0x82, '\n',
+                (byte) 0xC0, (byte) 0xAF, '\n', (byte) 0xED, (byte) 0xA0, (byte) 0x80});
+        assertEquals(Arrays.asList("1:0:3"), grep("a\uFFFDb", UTF_8, Grep.WINDOW));
+        assertEquals(Arrays.asList("2:4:2"), grep("^\uFFFDc", UTF_8, Grep.WINDOW));
+        assertEquals(Arrays.asList("3:7:3"), grep("x\uFFFD$", UTF_8, Grep.WINDOW));
+        //overlong encoding of '/' and encoded surrogate
+        assertEquals(Arrays.asList("4:11:2", "5:14:3"), grep("^\uFFFD$", UTF_8, Grep.WINDOW));
+        assertEquals(Arrays.<String>asList(), grep("/", UTF_8, Grep.WINDOW));
+    }
+
+    public void test_latin1() throws IOException {
+        write(new byte[] {'a', (byte) 0xE9, '\n', 'b'});
+        assertEquals(Arrays.asList("1:0:2"), grep("a\u00E9", LATIN_1, Grep.WINDOW));
+    }
+
+    public void test_listener_stops_search() throws IOException {
+        write("a\na\na\n".getBytes(UTF_8));
+        final List<Long> lines = new ArrayList<Long>();
+        long count = Matcher.compile("a").grep(file.toPath(), UTF_8, new GrepListener() {
+            @Override
+            public boolean matched(long line, long offset, long length) {
+                lines.add(line);
+                return lines.size() < 2;
+            }
+        });
+        assertEquals(2, count);
+        assertEquals(Arrays.asList(1L, 2L), lines);
+    }
+
+    public void test_unsupported_charset() throws IOException {
+        write(new byte[0]);
+        try {
+            grep("a", Charset.forName("UTF-16"), Grep.WINDOW);
+            fail("UTF-16 is not supported");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private List<String> grep(String pattern, Charset charset, long window) throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        Grep.grep(new NFABuilder().build(new ParserImpl(new LexerImpl(pattern)).parse()), file.toPath(), charset, new GrepListener() {
+            @Override
+            public boolean matched(long line, long offset, long length) {
+                lines.add(line + ":" + offset + ":" + length);
+                return true;
+            }
+        }, window);
+        return lines;
+    }
+}
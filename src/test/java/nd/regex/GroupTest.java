@@ -24,6 +24,14 @@ public class GroupTest extends MatcherTestCase {
         checkWorkEqually("a", "|");
     }
 
+    public void test_several_alternatives_in_group() {
+        checkWorkEqually("b", "(a|b|c)");
+        checkWorkEqually("xbazy", "x(foo|bar|baz)y");
+        checkWorkEqually("xquxy", "x(foo|bar|baz)y");
+        checkWorkEqually("abd", "(a|b|c)(b|d|e)d");
+        checkWorkEqually("ca", "((a|b)|c|(d|e|f))a");
+    }
+
     public void test() {
         assertTrue(Matcher.matches("abc", "a.?.?"));
     }
@@ -0,0 +1,92 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ *
+ */
+public class LazyDFATest extends TestCase {
+
+    public void test_matches_like_nfa() {
+        String[] patterns = {"abc", "a*b+c?", "(ab|cd)*", "[^a-c]x{2,3}", "^a.c$", "a$b", "a^b", "", "\u0100+"};
+        String[] strings = {"", "abc", "aabbb", "abcd", "cdab", "xxx", "dxx", "dxxxx", "a\u0100c", "\u0100\u0100"};
+        for (String pattern : patterns) {
+            Program program = build(pattern);
+            LazyDFA dfa = new LazyDFA(program, 1 << 20);
+            NFA nfa = new NFA(program);
+            for (String str : strings) {
+                boolean expected = nfa.emulate(str);
+                assertEquals(pattern + " " + str, expected ? LazyDFA.MATCHES : LazyDFA.NO_MATCH, dfa.match(str));
+            }
+        }
+    }
+
+    public void test_states_are_reused() {
+        LazyDFA dfa = new LazyDFA(build("(a|b)*c"), 1 << 20);
+        assertEquals(LazyDFA.MATCHES, dfa.match("ababbac"));
+        int states = dfa.stateCount();
+        assertEquals(LazyDFA.MATCHES, dfa.match("bbbbaac"));
+        assertEquals(LazyDFA.NO_MATCH, dfa.match("bbbba"));
+        assertEquals(states, dfa.stateCount());
+    }
+
+    public void test_counter_states_do_not_grow_with_bound() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append('a');
+        }
+        String str = sb.append("abc").toString();
+        LazyDFA small = new LazyDFA(build(".*a{1,10}b.*"), 1 << 20);
+        LazyDFA large = new LazyDFA(build(".*a{1,5000}b.*"), 1 << 20);
+        assertEquals(LazyDFA.MATCHES, small.match(str));
+        assertEquals(LazyDFA.MATCHES, large.match(str));
+        assertEquals(small.stateCount(), large.stateCount());
+    }
+
+    public void test_counter_threads_do_not_grow_with_minimum() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 4000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        String str = sb.append('1').toString();
+        LazyDFA dfa = new LazyDFA(build(".*[a-z]{3000,5000}1"), 1 << 24);
+        assertEquals(LazyDFA.MATCHES, dfa.match(str));
+        assertEquals(LazyDFA.NO_MATCH, dfa.match(str.substring(2000)));
+        assertTrue(dfa.stateCount() < 4200);
+        for (int state = 0; state < dfa.stateCount(); state++) {
+            assertTrue(dfa.threadCount(state) <= 5);
+        }
+    }
+
+    public void test_memory_limit() {
+        //DFA for this pattern has 2^8 states
+        Program program = build("(a|b)*a(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)");
+        NFA nfa = new NFA(program);
+        LazyDFA dfa = new LazyDFA(program, 2048);
+        Random random = new Random(0);
+        boolean failed = false;
+        for (int i = 0; i < 20; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 1000; j++) {
+                sb.append(random.nextBoolean() ? 'a' : 'b');
+            }
+            String str = sb.toString();
+            int result = dfa.match(str);
+            if (result == LazyDFA.FAILED) {
+                failed = true;
+            } else {
+                assertEquals(nfa.emulate(str) ? LazyDFA.MATCHES : LazyDFA.NO_MATCH, result);
+            }
+            //every state takes at least 96 bytes
+            assertTrue(dfa.stateCount() <= 2048 / 96);
+        }
+        assertTrue(failed);
+        assertEquals(LazyDFA.MATCHES, dfa.match("aaaaaaaa"));
+    }
+
+    private Program build(String pattern) {
+        return new NFABuilder().build(new ParserImpl(new LexerImpl(pattern)).parse());
+    }
+}
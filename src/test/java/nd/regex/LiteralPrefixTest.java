@@ -0,0 +1,53 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ *
+ */
+public class LiteralPrefixTest extends TestCase {
+
+    public void test_literal_sequence() {
+        assertPrefixes("ERROR \\d+", "ERROR ");
+        assertPrefixes("GET /api/[a-z]+", "GET /api/");
+        assertPrefixes("abc", "abc");
+        assertPrefixes("^abc$", "abc");
+    }
+
+    public void test_no_prefix() {
+        assertPrefixes("[a-z]+");
+        assertPrefixes("a?b");
+        assertPrefixes("a*b");
+        assertPrefixes("ab|[a-c]");
+        assertPrefixes("");
+    }
+
+    public void test_groups_and_quantifiers() {
+        assertPrefixes("(ab)(cd)e?", "abcd");
+        assertPrefixes("(ab){2}c?", "abab");
+        assertPrefixes("(ab){2}c", "ababc");
+        assertPrefixes("a{2,3}b", "aa");
+        assertPrefixes("a{2,}b", "aa");
+        assertPrefixes("(ab[cd])+", "ab");
+        assertPrefixes("x(a|b)c", "xac", "xbc");
+    }
+
+    public void test_alternatives() {
+        assertPrefixes("(foo|bar|baz)\\d+", "foo", "bar", "baz");
+        assertPrefixes("ab|ac", "ab", "ac");
+        assertPrefixes("x(foo|bar)y", "xfooy", "xbary");
+        assertPrefixes("(a|b)(c|d)", "ac", "ad", "bc", "bd");
+        assertPrefixes("(ab|a)c", "abc", "ac");
+        assertPrefixes("(a|)b", "ab", "b");
+        assertPrefixes("(foo[0-9]|bar)x", "foo", "bar");
+        assertPrefixes("(foo|[a-z]+)");
+    }
+
+    private static void assertPrefixes(String pattern, String... expected) {
+        assertEquals(new HashSet<String>(Arrays.asList(expected)),
+                new HashSet<String>(Arrays.asList(LiteralPrefix.of(new ParserImpl(new LexerImpl(pattern)).parse()))));
+    }
+}
@@ -2,6 +2,8 @@ package nd.regex;
 
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -17,6 +19,8 @@ abstract public class MatcherTestCase extends TestCase {
         boolean buildInResult = false;
         boolean buildIndExceptionsThrown = false;
         boolean result = false;
+        boolean compiledResult = false;
+        boolean dfaResult = false;
         boolean exceptionThrown = false;
         try {
             buildInResult = Pattern.compile(pattern, buildInRegexpFlags).matcher(str).matches();
@@ -26,6 +30,8 @@ abstract public class MatcherTestCase extends TestCase {
 
         try {
             result = Matcher.matches(str, pattern);
+            compiledResult = Matcher.compile(pattern).matches(str);
+            dfaResult = Matcher.compile(pattern, 1000).matches(str);
         } catch (Throwable t) {
             exceptionThrown = true;
         }
@@ -35,7 +41,33 @@ abstract public class MatcherTestCase extends TestCase {
         } else {
             assertFalse("Exception thrown but result " + buildInResult + " is expected", exceptionThrown);
             assertEquals("Wrong result", buildInResult, result);
+            assertEquals("Wrong result of compiled pattern", buildInResult, compiledResult);
+            assertEquals("Wrong result of DFA", buildInResult, dfaResult);
         }
     }
 
+    protected void checkFindEqually(String str, String pattern) {
+        java.util.regex.Matcher buildIn = Pattern.compile(pattern).matcher(str);
+        List<Match> expected = new ArrayList<Match>();
+        while (buildIn.find()) {
+            expected.add(match(buildIn));
+        }
+        nd.regex.Pattern compiled = Matcher.compile(pattern);
+        assertEquals("Wrong matches of " + pattern + " in " + str, expected, compiled.findAll(str));
+        assertEquals("Wrong first match of " + pattern + " in " + str,
+                expected.isEmpty() ? null : expected.get(0), compiled.find(str));
+    }
+
+    /**
+     * @return bounds of the last match of java.util.regex and of its groups
+     */
+    protected static Match match(java.util.regex.Matcher buildIn) {
+        int[] slots = new int[2 * buildIn.groupCount() + 2];
+        for (int group = 0; group <= buildIn.groupCount(); group++) {
+            slots[2 * group] = buildIn.start(group);
+            slots[2 * group + 1] = buildIn.end(group);
+        }
+        return new Match(slots);
+    }
+
 }
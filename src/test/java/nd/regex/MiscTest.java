@@ -1,5 +1,6 @@
 package nd.regex;
 
+import java.lang.management.ManagementFactory;
 import java.util.regex.Pattern;
 
 /**
@@ -29,6 +30,136 @@ public class MiscTest extends MatcherTestCase {
         }
     }
 
+    /**
+     * Measures memory allocated while matching 4K string many times with NFA emulation and with compiled pattern.
+     * Work sets are reused, so nothing should be allocated per character.
+     */
+    public void test_no_allocation_while_matching() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) return;
+
+        String regex = "(a|b)*[a-z0-9 ]+\\d?c{0,3}";
+        NFA nfa = new NFA(new NFABuilder().build(new ParserImpl(new LexerImpl(regex)).parse()));
+        nd.regex.Pattern pattern = Matcher.compile(regex);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1024; i++) {
+            sb.append("ab1 ");
+        }
+        String str = sb.toString();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(nfa.emulate(str));
+            assertTrue(pattern.matches(str));
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long start = bean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            nfa.emulate(str);
+        }
+        long allocated = bean.getThreadAllocatedBytes(threadId) - start;
+        assertTrue("NFA allocated " + allocated + " bytes", allocated < 64 * 1024);
+
+        start = bean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            pattern.matches(str);
+        }
+        allocated = bean.getThreadAllocatedBytes(threadId) - start;
+        assertTrue("Pattern allocated " + allocated + " bytes", allocated < 64 * 1024);
+    }
+
+    /**
+     * Measures memory allocated by new NFA matching and searching 20K string with counter of large bound.
+     * Threads of counter are collapsed, so work sets do not grow with number of repetitions.
+     */
+    public void test_counter_threads_do_not_grow() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) return;
+
+        NFA nfa = new NFA(new NFABuilder().build(new ParserImpl(new LexerImpl(".*a{1,5000}b.*")).parse()));
+        int[] slots = new int[nfa.slotCount()];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append('a');
+        }
+        String str = sb.append("abc").toString();
+
+        long threadId = Thread.currentThread().getId();
+        long start = bean.getThreadAllocatedBytes(threadId);
+        assertTrue(nfa.emulate(str));
+        assertTrue(nfa.search(str, 0, slots));
+        long allocated = bean.getThreadAllocatedBytes(threadId) - start;
+        assertTrue("NFA allocated " + allocated + " bytes", allocated < 16 * 1024);
+        assertEquals(0, slots[0]);
+        assertEquals(str.length(), slots[1]);
+    }
+
+    /**
+     * Compiles generated 200 KB patterns: long literal, alternation of thousands of words and many groups.
+     * Builder does not recurse along the pattern and emits program linear in length of pattern.
+     */
+    public void test_huge_patterns() {
+        java.util.Random random = new java.util.Random(25);
+        StringBuilder literal = new StringBuilder();
+        StringBuilder words = new StringBuilder();
+        StringBuilder groups = new StringBuilder();
+        while (words.length() < 200 * 1024) {
+            String word = "";
+            for (int i = 0; i < 8; i++) {
+                word += (char) ('a' + random.nextInt(26));
+            }
+            literal.append(word);
+            words.append(words.length() > 0 ? "|" : "").append(word);
+            groups.append("(").append(word).append("|\\d)?");
+        }
+        String first = literal.substring(0, 8);
+        String last = literal.substring(literal.length() - 8);
+        String[] patterns = {literal.toString(), words.toString(), groups.toString()};
+        String[] strings = {literal.toString(), last, first + "5" + last};
+        for (int i = 0; i < patterns.length; i++) {
+            Program program = new NFABuilder().build(new ParserImpl(new LexerImpl(patterns[i])).parse());
+            assertTrue(program.size() + " instructions", program.size() <= 2 * patterns[i].length());
+            nd.regex.Pattern compiled = Matcher.compile(patterns[i]);
+            assertTrue(compiled.matches(strings[i]));
+            assertFalse(compiled.matches(strings[i] + "!"));
+        }
+    }
+
+    /**
+     * Compiles 10000 groups nested in each other: plain, with alternatives and with quantifiers.
+     * Parser and builder use explicit stacks, so nesting does not overflow call stack.
+     */
+    public void test_deeply_nested_patterns() {
+        int depth = 10000;
+        StringBuilder groups = new StringBuilder();
+        StringBuilder alternatives = new StringBuilder();
+        StringBuilder quantifiers = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            groups.append('(');
+            alternatives.append("(a|");
+            quantifiers.append(i % 2 == 0 ? "(" : "(b*");
+        }
+        groups.append('a');
+        alternatives.append('b');
+        quantifiers.append('c');
+        for (int i = 0; i < depth; i++) {
+            groups.append(')');
+            alternatives.append(')');
+            quantifiers.append(i % 3 == 0 ? ")*" : ")?");
+        }
+        nd.regex.Pattern compiled = Matcher.compile(groups.toString());
+        assertEquals(depth, compiled.groupCount());
+        assertTrue(compiled.matches("a"));
+        assertFalse(compiled.matches("b"));
+        compiled = Matcher.compile(alternatives.toString());
+        assertTrue(compiled.matches("a"));
+        assertTrue(compiled.matches("b"));
+        assertFalse(compiled.matches("ab"));
+        compiled = Matcher.compile(quantifiers.toString());
+        assertTrue(compiled.matches("bbcc"));
+        assertFalse(compiled.matches("a"));
+    }
 
     private String createPathologicalPattern(char c, int n) {
         StringBuilder sb = new StringBuilder();
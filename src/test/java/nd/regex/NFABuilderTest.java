@@ -0,0 +1,76 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+import static nd.regex.Program.*;
+
+/**
+ *
+ */
+public class NFABuilderTest extends TestCase {
+
+    public void test_sequence() {
+        Program program = build("abc");
+        assertEquals(4, program.size());
+        assertEquals(CHAR, program.op[program.start]);
+        assertEquals('a', program.arg[program.start]);
+        int b = program.next[program.start];
+        int c = program.next[b];
+        assertEquals('b', program.arg[b]);
+        assertEquals('c', program.arg[c]);
+        assertEquals(MATCH, program.op[program.next[c]]);
+    }
+
+    public void test_empty() {
+        Program program = build("");
+        assertEquals(1, program.size());
+        assertEquals(MATCH, program.op[program.start]);
+    }
+
+    public void test_star() {
+        Program program = build("a*");
+        assertEquals(3, program.size());
+        int split = program.start;
+        assertEquals(SPLIT, program.op[split]);
+        assertEquals(CHAR, program.op[program.next[split]]);
+        assertEquals(split, program.next[program.next[split]]);
+        assertEquals(MATCH, program.op[program.alt[split]]);
+    }
+
+    public void test_counter() {
+        Program program = build("a{2,1000}b");
+        assertEquals(4, program.size());
+        int counter = program.start;
+        assertEquals(COUNT, program.op[counter]);
+        assertEquals(2, program.arg[counter]);
+        assertEquals(1000, program.alt[counter]);
+        assertEquals(CHAR, program.op[counter + 1]);
+        assertEquals(counter, program.next[counter + 1]);
+        assertEquals('b', program.arg[program.next[counter]]);
+        assertEquals(build("\\d{3,}").size(), build("\\d{3000,}").size());
+    }
+
+    public void test_character_class_ranges_are_merged() {
+        Program program = build("[c-ea-bx]");
+        assertEquals(CLASS, program.op[program.start]);
+        assertTrue(Arrays.equals(new int[] {'a', 'e', 'x', 'x'}, program.classes[program.arg[program.start]].ranges()));
+    }
+
+    public void test_exclusive_character_class() {
+        Program program = build("[^b]");
+        assertTrue(Arrays.equals(new int[] {0, 'a', 'c', Character.MAX_VALUE},
+                program.classes[program.arg[program.start]].ranges()));
+    }
+
+    public void test_inner_character_class() {
+        Program program = build("[[a-d][^b-z]]");
+        assertTrue(Arrays.equals(new int[] {0, 'd', '{', Character.MAX_VALUE},
+                program.classes[program.arg[program.start]].ranges()));
+    }
+
+    private Program build(String pattern) {
+        return new NFABuilder().build(new ParserImpl(new LexerImpl(pattern)).parse());
+    }
+}
@@ -0,0 +1,122 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ *
+ */
+public class ParallelMatchTest extends TestCase {
+
+    private static final String[] PATTERNS = {"(ab|c)*d?", "^a.*b$", "[a-c]*(abc|bca)[a-d]*", "(a|b)*a(a|b)(a|b)"};
+
+    private ForkJoinPool pool;
+
+    @Override
+    protected void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @Override
+    protected void tearDown() {
+        pool.shutdown();
+    }
+
+    public void test_transitions_from_every_state() {
+        Random random = new Random(20);
+        for (String pattern : PATTERNS) {
+            DFA dfa = DFA.build(program(pattern), 1000);
+            for (int i = 0; i < 50; i++) {
+                String str = random(random, random.nextInt(300));
+                int[] transitions = dfa.transitions(str, 0, str.length());
+                for (int state = 0; state < dfa.stateCount(); state++) {
+                    int expected = state;
+                    for (int j = 0; j < str.length(); j++) {
+                        expected = dfa.next(expected, str.charAt(j));
+                    }
+                    assertEquals(pattern + " " + str, expected, transitions[state]);
+                }
+            }
+        }
+    }
+
+    public void test_same_as_one_thread() {
+        Random random = new Random(21);
+        for (String pattern : PATTERNS) {
+            DFA dfa = DFA.build(program(pattern), 1000);
+            for (int i = 0; i < 200; i++) {
+                String str = random.nextBoolean() ? random(random, random.nextInt(100)) : repeated(random);
+                assertEquals(pattern + " " + str, dfa.matches(str, 0, str.length()),
+                        ParallelMatch.matches(dfa, str, 0, str.length(), pool, 3));
+            }
+        }
+    }
+
+    public void test_long_input() {
+        char[] chars = new char[1 << 20];
+        for (int i = 0; i < chars.length; i += 2) {
+            chars[i] = 'a';
+            chars[i + 1] = 'b';
+        }
+        StringBuilder sb = new StringBuilder().append(chars);
+        assertTrue(Matcher.compile("(ab)*").matchesParallel(sb, pool));
+        assertTrue(Matcher.compile("^a.*b$").matchesParallel(sb, pool));
+        assertFalse(Matcher.compile("(ab)*a").matchesParallel(sb, pool));
+        sb.setCharAt(sb.length() / 3, 'c');
+        assertFalse(Matcher.compile("(ab)*").matchesParallel(sb, pool));
+        assertTrue(Matcher.compile("(ab)*ac(ab)*").matchesParallel(sb, pool));
+    }
+
+    public void test_pattern_with_too_many_states() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < ParallelMatch.MIN_CHUNK * 2; i++) {
+            sb.append(i % 3 == 0 ? 'a' : 'b');
+        }
+        String pattern = "(a|b)*a(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)(a|b)";
+        assertNull(DFA.build(program(pattern), 1024));
+        assertEquals(Matcher.compile(pattern).matches(sb), Matcher.compile(pattern).matchesParallel(sb, pool));
+    }
+
+    public void test_profitable() {
+        DFA small = DFA.build(program("(ab)*"), 1024);
+        assertTrue(ParallelMatch.profitable(small, 1 << 20, ParallelMatch.MIN_CHUNK));
+        assertFalse(ParallelMatch.profitable(small, ParallelMatch.MIN_CHUNK, ParallelMatch.MIN_CHUNK));
+        DFA large = DFA.build(program("[a-c]{100}"), 1024);
+        assertTrue(large.stateCount() > 100);
+        assertFalse(ParallelMatch.profitable(large, 1 << 20, ParallelMatch.MIN_CHUNK));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1 << 20; i++) {
+            sb.append('a');
+        }
+        assertFalse(Matcher.compile("[a-c]{100}").matchesParallel(sb, pool));
+        sb.setLength(100);
+        assertTrue(Matcher.compile("[a-c]{100}").matchesParallel(sb, pool));
+    }
+
+    private static Program program(String pattern) {
+        return new NFABuilder().build(new ParserImpl(new LexerImpl(pattern)).parse());
+    }
+
+    private static String random(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = "abcd".charAt(random.nextInt(4));
+        }
+        return new String(chars);
+    }
+
+    private static String repeated(Random random) {
+        char[] chars = new char[random.nextInt(100)];
+        Arrays.fill(chars, 'c');
+        for (int i = 0; i + 1 < chars.length; i += 2) {
+            if (random.nextInt(10) > 0) {
+                chars[i] = 'a';
+                chars[i + 1] = 'b';
+            }
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,139 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ */
+public class PatternCacheTest extends TestCase {
+
+    public void test_hits_and_misses() {
+        PatternCache cache = new PatternCache(2);
+        Pattern p = cache.get("a+");
+        assertSame(p, cache.get("a+"));
+        assertTrue(cache.get("a+").matches("aaa"));
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(0, cache.evictions());
+        assertEquals(1, cache.size());
+    }
+
+    public void test_least_recently_used_eviction() {
+        PatternCache cache = new PatternCache(2);
+        Pattern a = cache.get("a");
+        cache.get("b");
+        cache.get("a");
+        cache.get("c");
+        assertEquals(1, cache.evictions());
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get("a"));
+        cache.get("b");
+        assertEquals(4, cache.misses());
+        assertEquals(2, cache.evictions());
+    }
+
+    public void test_recently_used_pattern_survives_eviction() {
+        PatternCache cache = new PatternCache(100);
+        Pattern hot = cache.get("hot");
+        for (int i = 0; i < 10000; i++) {
+            assertSame(hot, cache.get("hot"));
+            cache.get("p" + i);
+            assertTrue(cache.size() <= 100);
+        }
+        assertEquals(10001, cache.misses());
+        assertEquals(10001 - 100, cache.evictions());
+    }
+
+    public void test_size_property() {
+        assertEquals(256, Matcher.cacheSize(null));
+        assertEquals(256, Matcher.cacheSize(-1));
+        assertEquals(0, Matcher.cacheSize(0));
+        assertEquals(1000, Matcher.cacheSize(1000));
+    }
+
+    public void test_disabled() {
+        PatternCache cache = new PatternCache(0);
+        assertNotSame(cache.get("a"), cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.misses());
+    }
+
+    public void test_invalid_pattern_is_not_cached() {
+        PatternCache cache = new PatternCache(2);
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.get("a{");
+                fail("Exception expected");
+            } catch (Error e) {
+                //expected
+            }
+        }
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.misses());
+    }
+
+    public void test_concurrent_misses_compile_once() throws Exception {
+        final PatternCache cache = new PatternCache(16);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Pattern>> results = new ArrayList<Future<Pattern>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<Pattern>() {
+                    @Override
+                    public Pattern call() throws Exception {
+                        start.await();
+                        return cache.get("(ab|cd)*[0-9]{2,5}");
+                    }
+                }));
+            }
+            start.countDown();
+            Pattern first = results.get(0).get();
+            for (Future<Pattern> result : results) {
+                assertSame(first, result.get());
+            }
+            assertEquals(1, cache.misses());
+            assertEquals(7, cache.hits());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void test_concurrent_misses_keep_size_bounded() throws Exception {
+        final PatternCache cache = new PatternCache(4);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 8; i++) {
+                final int thread = i;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        boolean matched = true;
+                        for (int j = 0; j < 500; j++) {
+                            String digits = Integer.toString((thread + j) % 16);
+                            matched &= cache.get(digits + "x*").matches(digits + "xx");
+                        }
+                        return matched;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+            assertTrue(cache.toString(), cache.size() <= 4);
+            assertEquals(4000, cache.hits() + cache.misses());
+            assertEquals(cache.misses() - cache.size(), cache.evictions());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ */
+public class PatternTest extends TestCase {
+
+    public void test_reuse() {
+        Pattern pattern = Matcher.compile("\\d{3}-\\d{2}-\\d{2}");
+        assertEquals("\\d{3}-\\d{2}-\\d{2}", pattern.pattern());
+        assertTrue(pattern.matches("555-22-33"));
+        assertFalse(pattern.matches("555-22-3"));
+        assertTrue(pattern.matches("123-45-67"));
+    }
+
+    public void test_null() {
+        try {
+            Matcher.compile(null);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+        try {
+            Matcher.compile("a").matches(null);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    public void test_shared_between_threads() throws Exception {
+        final Pattern pattern = Matcher.compile("(a|b)*c[0-9]+");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        for (int j = 0; j < 1000; j++) {
+                            if (!pattern.matches("abbac" + j) || pattern.matches("abbad" + j)) return false;
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void test_concurrent_compilation() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        for (int j = 0; j < 200; j++) {
+                            Pattern pattern = Matcher.compile("(ab|cd)*[^x]{2,4}" + j);
+                            if (!pattern.matches("abcdyz" + j) || pattern.matches("abcdxz" + j)) return false;
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ */
+public class PoolTest extends TestCase {
+
+    public void test_released_object_is_reused() {
+        Pool<Object> pool = new CountingPool();
+        Object first = pool.take();
+        pool.release(first);
+        assertSame(first, pool.take());
+        assertNotSame(first, pool.take());
+    }
+
+    public void test_pool_is_bounded() {
+        CountingPool pool = new CountingPool();
+        int size = Runtime.getRuntime().availableProcessors();
+        List<Object> taken = new ArrayList<Object>();
+        for (int i = 0; i < size + 2; i++) {
+            taken.add(pool.take());
+        }
+        for (Object object : taken) {
+            pool.release(object);
+        }
+        Set<Object> reused = new HashSet<Object>();
+        for (int i = 0; i < size + 2; i++) {
+            reused.add(pool.take());
+        }
+        assertEquals(size + 2, reused.size());
+        assertEquals(size + 4, pool.created);
+    }
+
+    public void test_concurrent_matching() throws Exception {
+        final Pattern pattern = Matcher.compile("(a|b)*a(a|b){3}");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        boolean correct = true;
+                        for (int j = 0; j < 2000; j++) {
+                            String str = Integer.toBinaryString(j).replace('0', 'a').replace('1', 'b');
+                            correct &= pattern.matches(str) == java.util.regex.Pattern.matches("(a|b)*a(a|b){3}", str);
+                            correct &= pattern.find(str) != null == str.matches(".*a(a|b){3}.*");
+                        }
+                        return correct;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static final class CountingPool extends Pool<Object> {
+        int created;
+
+        @Override
+        Object create() {
+            created++;
+            return new Object();
+        }
+    }
+}
@@ -30,4 +30,19 @@ public class QuantifiersTest extends MatcherTestCase {
         checkWorkEqually("555-22-33", "\\d{3}-\\d{2}-\\d{2}");
     }
 
+    public void test_large_bounds() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        String str = sb.toString();
+        checkWorkEqually(str, "[a-z]{3,5000}");
+        checkWorkEqually(str, "[a-z]{3001,5000}");
+        checkWorkEqually(str, "[a-z]{1,2999}");
+        checkWorkEqually(str, ".{3000}");
+        checkWorkEqually(str + "1", "[a-z]{2000,}\\d{1,1000}");
+        checkFindEqually("ab" + str, "(b[a-z]{10,20})c");
+        checkFindEqually("aaaaab aab", "a{2,3}b");
+    }
+
 }
@@ -0,0 +1,73 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ *
+ */
+public class RegexSetTest extends TestCase {
+
+    public void test_matching_patterns() {
+        RegexSet set = Matcher.compileSet("a+", "[a-c]*", "abc", "\\d+", "");
+        assertEquals(5, set.size());
+        assertEquals("abc", set.pattern(2));
+        assertTrue(Arrays.equals(new int[] {0, 1}, set.matches("aa")));
+        assertTrue(Arrays.equals(new int[] {1, 2}, set.matches("abc")));
+        assertTrue(Arrays.equals(new int[] {3}, set.matches("42")));
+        assertTrue(Arrays.equals(new int[] {1, 4}, set.matches("")));
+        assertTrue(Arrays.equals(new int[0], set.matches("x")));
+        assertTrue(set.matchesAny("bca"));
+        assertFalse(set.matchesAny("a1"));
+    }
+
+    public void test_anchors() {
+        RegexSet set = Matcher.compileSet("^a", "a$", "^$", "b");
+        assertTrue(Arrays.equals(new int[] {0, 1}, set.matches("a")));
+        assertTrue(Arrays.equals(new int[] {2}, set.matches("")));
+        assertTrue(Arrays.equals(new int[] {3}, set.matches("b")));
+    }
+
+    public void test_same_result_as_single_patterns() {
+        Random random = new Random(0);
+        String[] patterns = {"(a|b)*c", "a{2,3}", "[^a]+", ".*b.*", "(ab|a)(bc|c)", "a?b?c?", "\\w\\d"};
+        RegexSet set = Matcher.compileSet(patterns);
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                sb.append("abc1".charAt(random.nextInt(4)));
+            }
+            String str = sb.toString();
+            int[] expected = new int[patterns.length];
+            int count = 0;
+            for (int id = 0; id < patterns.length; id++) {
+                if (Matcher.matches(str, patterns[id])) expected[count++] = id;
+            }
+            assertTrue(str, Arrays.equals(Arrays.copyOf(expected, count), set.matches(str)));
+        }
+    }
+
+    public void test_thousands_of_patterns() {
+        String[] patterns = new String[5000];
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = "key" + i + "=[a-z]+";
+        }
+        RegexSet set = Matcher.compileSet(patterns);
+        assertTrue(Arrays.equals(new int[] {4999}, set.matches("key4999=value")));
+        assertTrue(Arrays.equals(new int[] {17}, set.matches("key17=x")));
+        assertTrue(Arrays.equals(new int[0], set.matches("key5000=value")));
+        assertTrue(Arrays.equals(new int[0], set.matches("key17=")));
+    }
+
+    public void test_no_patterns() {
+        try {
+            Matcher.compileSet();
+            fail("Set without patterns");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ *
+ */
+public class RequiredLiteralsTest extends TestCase {
+
+    public void test_literal_between_wildcards() {
+        assertRequired(".*timeout.*(db|cache).*", "timeout");
+        assertRequired("[a-z]+@example\\.com", "@example.com");
+        assertRequired("abc", "abc");
+    }
+
+    public void test_alternatives() {
+        assertRequired("(db|cache)");
+        assertRequired("(xerror|yerror)", "error");
+        assertRequired("(abcx|abcy)", "abc");
+        assertRequired("(.*key.*|key)", "key");
+        assertRequired("(ab|ab)c", "abc");
+    }
+
+    public void test_quantifiers() {
+        assertRequired("a*b?");
+        assertRequired("x(ab)+y", "xab", "aby");
+        assertRequired("(ab){2}", "abab");
+        assertRequired("(ab){2,}", "abab");
+        assertRequired("(a.){2}", "a");
+    }
+
+    public void test_huge_bounds() {
+        String a = required("a{64}")[0];
+        assertRequired("a{10000000}", a);
+        assertRequired("a{10000000,}", a);
+        assertRequired("xa{10000000}y", "x" + a.substring(1), a.substring(1) + "y", a);
+        assertEquals(Arrays.asList(required("x(ab.){1000}y")), Arrays.asList(required("x(ab.){10000000}y")));
+    }
+
+    public void test_several_literals() {
+        assertRequired("GET .* HTTP/1\\.1", " HTTP/1.1", "GET ");
+    }
+
+    public void test_long_literal_is_cut() {
+        StringBuilder pattern = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            pattern.append((char) ('a' + i % 26));
+        }
+        String[] required = required(pattern.toString());
+        assertTrue(required.length > 0);
+        for (String literal : required) {
+            assertTrue(literal.length() <= 64);
+            assertTrue(pattern.toString().contains(literal));
+        }
+    }
+
+    public void test_non_matching_strings_are_rejected() {
+        Pattern pattern = Matcher.compile(".*timeout.*(db|cache).*");
+        assertFalse(pattern.matches("connection refused by db"));
+        assertTrue(pattern.matches("timeout while reading from db"));
+        assertNull(pattern.find("connection refused by db"));
+        assertEquals(new Match(new int[] {0, 23, 16, 21}), pattern.find("timeout reading cache x"));
+    }
+
+    private static void assertRequired(String pattern, String... expected) {
+        assertEquals(new HashSet<String>(Arrays.asList(expected)),
+                new HashSet<String>(Arrays.asList(required(pattern))));
+    }
+
+    private static String[] required(String pattern) {
+        return RequiredLiterals.of(new ParserImpl(new LexerImpl(pattern)).parse());
+    }
+}
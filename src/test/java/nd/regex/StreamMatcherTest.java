@@ -0,0 +1,100 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ *
+ */
+public class StreamMatcherTest extends TestCase {
+
+    public void test_chunks() {
+        StreamMatcher matcher = Matcher.compile("(ab)+c").streamMatcher();
+        assertTrue(matcher.feed("aba"));
+        assertTrue(matcher.feed(""));
+        assertTrue(matcher.feed(new char[] {'x', 'b', 'c', 'x'}, 1, 2));
+        assertTrue(matcher.finish());
+    }
+
+    public void test_dead_input() {
+        StreamMatcher matcher = Matcher.compile("a+").streamMatcher();
+        assertTrue(matcher.feed("aaa"));
+        assertFalse(matcher.feed("ab"));
+        assertFalse(matcher.feed("aaa"));
+        assertFalse(matcher.finish());
+    }
+
+    public void test_anchors_across_chunks() {
+        StreamMatcher matcher = Matcher.compile("^a*$").streamMatcher();
+        matcher.feed("a");
+        matcher.feed("a");
+        assertTrue(matcher.finish());
+        matcher.reset();
+        assertTrue(matcher.finish());
+        matcher.reset();
+        matcher.feed("a");
+        matcher.feed("b");
+        assertFalse(matcher.finish());
+        matcher = Matcher.compile("a$b").streamMatcher();
+        matcher.feed("a");
+        matcher.feed("b");
+        assertFalse(matcher.finish());
+    }
+
+    public void test_finished_matcher() {
+        StreamMatcher matcher = Matcher.compile("a").streamMatcher();
+        matcher.feed("a");
+        assertTrue(matcher.finish());
+        try {
+            matcher.feed("a");
+            fail("Input is finished");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        matcher.reset();
+        assertFalse(matcher.finish());
+    }
+
+    public void test_same_result_as_whole_string() {
+        Random random = new Random(0);
+        String[] patterns = {"(a|b)*c", "a{2,3}b?", "[^a]+", ".*b.*", "(ab|a)(bc|c)", "^a?b?c?$"};
+        for (String source : patterns) {
+            for (int limit : new int[] {0, 1000}) {
+                Pattern pattern = Matcher.compile(source, limit);
+                StreamMatcher matcher = pattern.streamMatcher();
+                for (int i = 0; i < 200; i++) {
+                    StringBuilder sb = new StringBuilder();
+                    int length = random.nextInt(8);
+                    for (int j = 0; j < length; j++) {
+                        sb.append("abc".charAt(random.nextInt(3)));
+                    }
+                    String str = sb.toString();
+                    matcher.reset();
+                    for (int from = 0; from < str.length(); ) {
+                        int to = Math.min(str.length(), from + 1 + random.nextInt(3));
+                        matcher.feed(str.substring(from, to));
+                        from = to;
+                    }
+                    assertEquals(source + " " + str, pattern.matches(str), matcher.finish());
+                }
+            }
+        }
+    }
+
+    public void test_long_stream_with_small_memory() {
+        Program program = new NFABuilder().build(new ParserImpl(new LexerImpl("(a|b)*a(a|b){10}")).parse());
+        //DFA needs thousands of states, but only few fit to memory, so it is flushed all the time
+        StreamMatcher matcher = new StreamMatcher(program, null, 4096);
+        Random random = new Random(0);
+        char[] chunk = new char[1000];
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < chunk.length; j++) {
+                chunk[j] = random.nextBoolean() ? 'a' : 'b';
+            }
+            assertTrue(matcher.feed(chunk, 0, chunk.length));
+        }
+        matcher.feed("a" + "bbbbbbbbbb");
+        assertTrue(matcher.finish());
+    }
+}
@@ -0,0 +1,100 @@
+package nd.regex;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ *
+ */
+public class Utf8CompilerTest extends TestCase {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public void test_sequences_of_ranges() {
+        List<int[]> sequences = Utf8Compiler.sequences(new int[] {'a', 'c', 0x80, 0x800});
+        assertEquals(3, sequences.size());
+        assertEquals("[97, 99]", Arrays.toString(sequences.get(0)));
+        assertEquals("[194, 223, 128, 191]", Arrays.toString(sequences.get(1)));
+        assertEquals("[224, 224, 160, 160, 128, 128]", Arrays.toString(sequences.get(2)));
+    }
+
+    public void test_surrogates_have_no_encoding() {
+        assertTrue(Utf8Compiler.sequences(new int[] {0xD800, 0xDBFF}).isEmpty());
+        //all surrogates stand for supplementary characters
+        List<int[]> sequences = Utf8Compiler.sequences(new int[] {0xD800, 0xDFFF});
+        assertEquals(0xF0, sequences.get(0)[0]);
+        assertEquals(0xF4, sequences.get(sequences.size() - 1)[1]);
+    }
+
+    public void test_every_character_of_class() {
+        Pattern pattern = Matcher.compile("[a-z\u00E0-\u0FFF\uABCD-\uD7FF\uE000\uFFF0-\uFFFE]");
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (Character.isSurrogate((char) c)) continue;
+            String str = String.valueOf((char) c);
+            assertEquals(str, pattern.matches(str), pattern.matchesUtf8(str.getBytes(UTF_8)));
+        }
+    }
+
+    public void test_same_as_string_matching() {
+        String[] patterns = {"a.c", "[^x]+", "\\w+\\s\\d*", "(\u00E9|\u4E2D\u6587)+", "^a?$", "[\u0100-\u7FFF]b|.*z"};
+        char[] chars = {'a', 'b', 'c', 'x', 'z', ' ', '1', '\u00E9', '\u0100', '\u4E2D', '\u6587', '\uFFFF'};
+        Random random = new Random(18);
+        for (String regex : patterns) {
+            Pattern pattern = Matcher.compile(regex);
+            for (int i = 0; i < 300; i++) {
+                char[] str = new char[random.nextInt(5)];
+                for (int j = 0; j < str.length; j++) {
+                    str[j] = chars[random.nextInt(chars.length)];
+                }
+                String s = new String(str);
+                assertEquals(regex + " " + s, pattern.matches(s), pattern.matchesUtf8(s.getBytes(UTF_8)));
+            }
+        }
+    }
+
+    public void test_supplementary_character_is_one_character() {
+        byte[] smile = "\uD83D\uDE00".getBytes(UTF_8);
+        assertTrue(Matcher.compile("^.$").matchesUtf8(smile));
+        assertTrue(Matcher.compile("[^a]").matchesUtf8(smile));
+        assertFalse(Matcher.compile("..").matchesUtf8(smile));
+        assertFalse(Matcher.compile("\uD83D\uDE00").matchesUtf8(smile));
+    }
+
+    public void test_malformed_bytes_never_match() {
+        Pattern any = Matcher.compile(".*");
+        assertTrue(any.matchesUtf8(new byte[0]));
+        assertFalse(any.matchesUtf8(new byte[] {(byte) 0x80}));
+        assertFalse(any.matchesUtf8(new byte[] {'a', (byte) 0xC3}));
+        assertFalse(any.matchesUtf8(new byte[] {(byte) 0xC0, (byte) 0x80}));
+        assertFalse(any.matchesUtf8(new byte[] {(byte) 0xED, (byte) 0xA0, (byte) 0x80}));
+    }
+
+    public void test_buffer_position_and_limit() {
+        ByteBuffer buffer = ByteBuffer.wrap("xx\u00E9\u00E9y".getBytes(UTF_8));
+        buffer.position(2);
+        buffer.limit(6);
+        Pattern pattern = Matcher.compile("\u00E9+");
+        assertTrue(pattern.matchesUtf8(buffer));
+        assertEquals(2, buffer.position());
+        ByteBuffer direct = ByteBuffer.allocateDirect(4);
+        direct.put("\u00E9\u00E9".getBytes(UTF_8)).flip();
+        assertTrue(pattern.matchesUtf8(direct));
+    }
+
+    public void test_pattern_set_ids_are_kept() {
+        Program program = Utf8Compiler.compile(new NFABuilder().build(Arrays.asList(
+                new ParserImpl(new LexerImpl("\u00E9")).parse(),
+                new ParserImpl(new LexerImpl(".")).parse())));
+        LazyDFA dfa = new LazyDFA(program, Pattern.DFA_MEMORY_LIMIT);
+        int state = dfa.start();
+        for (byte b : "\u00E9".getBytes(UTF_8)) {
+            state = dfa.next(state, (char) (b & 0xFF));
+        }
+        assertEquals("[0, 1]", Arrays.toString(dfa.matches(state)));
+    }
+}